@@ -0,0 +1,49 @@
+package com;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Marius
+ *
+ * Time steps per second of NumericalSolution in MATRIX mode. Only small meshes, the dense linear
+ * system has (size-2)^4 elements.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MatrixSolverBenchmark {
+
+	@Param({ "20", "50" })
+	int size;
+
+	NumericalSolution ns;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		ns = new NumericalSolution(SolverBenchmark.hotSquare(size), SolverBenchmark.ALPHA, NumericalSolution.Mode.MATRIX);
+	}
+
+	@Benchmark
+	public SimpleMatrix step() {
+		ns.updateVelocity(SolverBenchmark.DELTA_TIME);
+		ns.updateData();
+		return ns.getSolution();
+	}
+}
@@ -0,0 +1,64 @@
+package com;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Marius
+ *
+ * Time steps per second of the double DOUBLE_BUFFER mode against FloatSolution in SINGLE and MIXED
+ * precision. The accuracy of the float modes is printed by PrecisionReport.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrecisionBenchmark {
+
+	@Param({ "256", "1024", "4096" })
+	int size;
+
+	NumericalSolution fp64;
+	FloatSolution single;
+	FloatSolution mixed;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		fp64 = new NumericalSolution(SolverBenchmark.hotSquare(size), SolverBenchmark.ALPHA, NumericalSolution.Mode.DOUBLE_BUFFER);
+		single = new FloatSolution(SolverBenchmark.hotSquare(size), SolverBenchmark.ALPHA, FloatSolution.Precision.SINGLE);
+		mixed = new FloatSolution(SolverBenchmark.hotSquare(size), SolverBenchmark.ALPHA, FloatSolution.Precision.MIXED);
+	}
+
+	@Benchmark
+	public NumericalSolution double64() {
+		fp64.updateVelocity(SolverBenchmark.DELTA_TIME);
+		fp64.updateData();
+		return fp64;
+	}
+
+	@Benchmark
+	public float[] single() {
+		single.step(SolverBenchmark.DELTA_TIME);
+		return single.getField();
+	}
+
+	@Benchmark
+	public float[] mixed() {
+		mixed.step(SolverBenchmark.DELTA_TIME);
+		return mixed.getField();
+	}
+}
@@ -0,0 +1,65 @@
+package com;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Marius
+ *
+ * Cost of setting up a simulation from many measured points with the radial basis surface:
+ * fitting the surface and projecting it onto a 500x500 mesh.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RadialBasisBenchmark {
+
+	private static final int SIZE = 500;
+
+	@Param({ "1000", "10000" })
+	int points;
+
+	final HeatSimulation simulation = new HeatSimulation();
+
+	List<Vertex> vertices;
+
+	RadialBasisSurface surface;
+
+	@Setup
+	public void setup() {
+		//fixed seed so that every run fits the same points
+		Random random = new Random(42);
+		vertices = new ArrayList<>();
+		for (int n = 0; n < points; n++)
+			vertices.add(new Vertex(random.nextDouble() * (SIZE - 1), random.nextDouble() * (SIZE - 1), random.nextDouble() * 255));
+		surface = new RadialBasisSurface(vertices);
+	}
+
+	@Benchmark
+	public RadialBasisSurface fit() {
+		return new RadialBasisSurface(vertices);
+	}
+
+	@Benchmark
+	public SimpleMatrix project() {
+		return simulation.projectPolynomial(surface, SIZE, SIZE);
+	}
+}
@@ -0,0 +1,71 @@
+package com;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Marius
+ *
+ * Cost of drawing one frame with PrimaryPanel. The frame is drawn into an off-screen image,
+ * so this runs on a headless machine as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+	@Param({ "50", "200" })
+	int size;
+
+	@Param({ "8" })
+	int pixelSize;
+
+	PrimaryPanel panel;
+
+	BufferedImage image;
+
+	Graphics2D graphics;
+
+	@Setup
+	public void setup() {
+		NumericalSolution ns = new NumericalSolution(SolverBenchmark.hotSquare(size), SolverBenchmark.ALPHA,
+				NumericalSolution.Mode.DOUBLE_BUFFER);
+		int pixels = size * pixelSize;
+		//the panel draws upwards from the origin
+		FrameExchange exchange = new FrameExchange(size, size);
+		ns.setReductions(true);
+		exchange.back().copyFrom(ns.getSolution(), ns.getStats(), 0, 0);
+		exchange.publish();
+		panel = new PrimaryPanel(exchange, 0, pixels - 1, pixelSize);
+		image = new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_RGB);
+		graphics = image.createGraphics();
+	}
+
+	@TearDown
+	public void tearDown() {
+		graphics.dispose();
+	}
+
+	@Benchmark
+	public BufferedImage renderFrame() {
+		panel.paintComponent(graphics);
+		return image;
+	}
+}
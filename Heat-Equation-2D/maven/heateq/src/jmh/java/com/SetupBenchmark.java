@@ -0,0 +1,66 @@
+package com;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Marius
+ *
+ * Cost of setting up a simulation in HeatSimulation: fitting the spline surface to the points and
+ * projecting the surface onto the mesh.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SetupBenchmark {
+
+	@Param({ "4", "8", "16" })
+	int points;
+
+	@Param({ "50", "500" })
+	int size;
+
+	final HeatSimulation simulation = new HeatSimulation();
+
+	List<Vertex> vertices;
+
+	Polynomial poly;
+
+	@Setup
+	public void setup() {
+		//fixed seed so that every run fits the same points
+		Random random = new Random(42);
+		vertices = new ArrayList<>();
+		for (int n = 0; n < points; n++)
+			vertices.add(new Vertex(random.nextDouble() * (size - 1), random.nextDouble() * (size - 1), random.nextDouble() * 255));
+		poly = simulation.CreateSplineSurface(vertices);
+	}
+
+	@Benchmark
+	public Polynomial fitSpline() {
+		return simulation.CreateSplineSurface(vertices);
+	}
+
+	@Benchmark
+	public SimpleMatrix projectMesh() {
+		return simulation.projectPolynomial(poly, size, size);
+	}
+}
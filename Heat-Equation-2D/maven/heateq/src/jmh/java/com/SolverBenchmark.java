@@ -0,0 +1,78 @@
+package com;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Marius
+ *
+ * Time steps per second of NumericalSolution for different mesh sizes and modes.
+ * MATRIX mode is measured separately in MatrixSolverBenchmark since it can not handle large meshes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SolverBenchmark {
+
+	static final double ALPHA = 5;
+	static final double DELTA_TIME = 0.1;
+
+	@Param({ "64", "256", "1024" })
+	int size;
+
+	@Param({ "STENCIL", "DOUBLE_BUFFER" })
+	NumericalSolution.Mode mode;
+
+	@Param({ "1" })
+	int threads;
+
+	NumericalSolution ns;
+
+	/**
+	 * The field is reset every iteration so that it does not decay towards denormal values.
+	 */
+	@Setup(Level.Iteration)
+	public void setup() {
+		ns = new NumericalSolution(hotSquare(size), ALPHA, mode, threads);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		ns.shutdown();
+	}
+
+	@Benchmark
+	public SimpleMatrix step() {
+		ns.updateVelocity(DELTA_TIME);
+		ns.updateData();
+		return ns.getSolution();
+	}
+
+	/**
+	 * A hot square in the middle of a cold size by size grid with the bound set to 0.
+	 */
+	static SimpleMatrix hotSquare(int size) {
+		SimpleMatrix matrix = new SimpleMatrix(size, size);
+		for (int i = size / 4; i < 3 * size / 4; i++)
+			for (int j = size / 4; j < 3 * size / 4; j++)
+				matrix.set(i, j, 100);
+		return matrix;
+	}
+}
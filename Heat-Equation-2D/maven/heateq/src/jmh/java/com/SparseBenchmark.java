@@ -0,0 +1,58 @@
+package com;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Marius
+ *
+ * Time for the first 100 time steps from two small hot spots on a cold mesh, DOUBLE_BUFFER against
+ * SPARSE mode. Every invocation starts over from the initial temperatures, the copy is included in both.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class SparseBenchmark {
+
+	static final int STEPS = 100;
+
+	@Param({ "1024", "4096" })
+	int size;
+
+	@Param({ "DOUBLE_BUFFER", "SPARSE" })
+	NumericalSolution.Mode mode;
+
+	SimpleMatrix initial;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		initial = new SimpleMatrix(size, size);
+		for (int i = size / 2 - 4; i < size / 2 + 4; i++)
+			for (int j = size / 2 - 4; j < size / 2 + 4; j++)
+				initial.set(i, j, 100);
+		initial.set(size / 5, size / 3, 200);
+	}
+
+	@Benchmark
+	public SimpleMatrix advance() {
+		NumericalSolution ns = new NumericalSolution(initial.copy(), SolverBenchmark.ALPHA, mode);
+		ns.advance(STEPS, SolverBenchmark.DELTA_TIME);
+		return ns.getSolution();
+	}
+}
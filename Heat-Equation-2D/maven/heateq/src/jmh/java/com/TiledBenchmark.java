@@ -0,0 +1,56 @@
+package com;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Marius
+ *
+ * Time per 8 time steps for DOUBLE_BUFFER against TILED mode on meshes that do not fit in the cache.
+ *
+ * DOUBLE_BUFFER reads and writes the whole grid every time step, that is 16 bytes per cell and step
+ * (2 GB per 8 steps for 8192x8192). TILED only does that once per 8 steps, so the difference shows
+ * how much of the time goes to memory traffic. The 8192x8192 mesh needs about 1.5 GB of heap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Thread)
+public class TiledBenchmark {
+
+	static final int STEPS = 8;
+
+	@Param({ "2048", "8192" })
+	int size;
+
+	@Param({ "DOUBLE_BUFFER", "TILED" })
+	NumericalSolution.Mode mode;
+
+	NumericalSolution ns;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		ns = new NumericalSolution(SolverBenchmark.hotSquare(size), SolverBenchmark.ALPHA, mode);
+	}
+
+	@Benchmark
+	public SimpleMatrix advance() {
+		ns.advance(STEPS, SolverBenchmark.DELTA_TIME);
+		return ns.getSolution();
+	}
+}
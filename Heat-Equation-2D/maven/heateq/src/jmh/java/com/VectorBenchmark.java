@@ -0,0 +1,66 @@
+package com;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Marius
+ *
+ * Scalar StencilKernel against the Vector API kernel. Build with the vector profile, otherwise
+ * both benchmarks measure the scalar kernel: StencilKernel.vectorized() silently falls back to it,
+ * so two equal scores mean the vector kernel was not used.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@State(Scope.Thread)
+public class VectorBenchmark {
+
+	@Param({ "256", "1024", "4096" })
+	int size;
+
+	double[] u;
+	double[] next;
+
+	StepKernel vector;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		u = SolverBenchmark.hotSquare(size).getDDRM().getData();
+		next = u.clone();
+		vector = StencilKernel.vectorized();
+	}
+
+	@Benchmark
+	public double[] scalar() {
+		StencilKernel.step(u, next, size, SolverBenchmark.ALPHA, SolverBenchmark.DELTA_TIME, 1, size - 1);
+		return swap();
+	}
+
+	@Benchmark
+	public double[] vector() {
+		vector.step(u, next, size, SolverBenchmark.ALPHA, SolverBenchmark.DELTA_TIME, 1, size - 1);
+		return swap();
+	}
+
+	private double[] swap() {
+		double[] tmp = u;
+		u = next;
+		next = tmp;
+		return u;
+	}
+}
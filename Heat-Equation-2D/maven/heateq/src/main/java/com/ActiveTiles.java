@@ -0,0 +1,189 @@
+package com;
+
+/**
+ * @author Marius
+ *
+ * Time steps that only calculate the part of the grid heat has reached, for initial temperatures with
+ * a few hot spots on a field of zeros (SPARSE mode of NumericalSolution).
+ *
+ * The interior of the grid is split into tiles and a bitmap tells which tiles are active. A cell that is 0
+ * and whose neighbours are all 0 stays exactly 0 in the time step, so the tiles that are not active are
+ * skipped. For that to hold, the tiles are active when:
+ * 		- they contain a value that is not 0 (+0.0, since -0.0 does not stay -0.0),
+ * 		- they touch a part of the bound that is not 0,
+ * 		- a neighbouring active tile has a value that is not 0 on the edge facing them.
+ * The first two are checked once at the start. After a tile is calculated only its edges that face tiles
+ * which are not active yet are checked, and those tiles join right away. A tile that joins before it is
+ * reached in the same time step is calculated from temperatures that are all 0 around it, which is still
+ * exact. Tiles never leave the set, so the set grows one tile at a time as the heat spreads and the cells
+ * that are skipped hold 0 in both buffers.
+ *
+ * The active tiles are calculated with the same arithmetic as StencilKernel.step(...), so the result is
+ * exactly the same as stepping the whole grid. Runs of active tiles next to each other in a row are
+ * calculated in one go, and once every tile is active the whole grid is stepped at once. stepReduce(...)
+ * only reduces the tiles it calculates, the cells it skips are all 0.
+ *
+ * The temperatures must only be changed by step(...), values written from outside would not be noticed.
+ */
+public class ActiveTiles {
+
+	private final int rows;
+	private final int cols;
+
+	private final int tileRows;
+	private final int tileCols;
+
+	/**
+	 * Amount of tiles in the y and x direction.
+	 */
+	private final int tilesY;
+	private final int tilesX;
+
+	/**
+	 * Bitmap of the active tiles, tile (ty,tx) is at ty * tilesX + tx.
+	 */
+	private final boolean[] active;
+
+	private int activeCount = 0;
+
+	/**
+	 * @param u			Initial temperatures, flat row-major including the bound.
+	 * @param rows		Amount of rows in the grid (including the bound).
+	 * @param cols		Amount of columns in the grid (including the bound).
+	 * @param tileRows	Amount of rows in a tile.
+	 * @param tileCols	Amount of columns in a tile.
+	 */
+	public ActiveTiles(double[] u, int rows, int cols, int tileRows, int tileCols) {
+		if (tileRows < 1 || tileCols < 1)
+			throw new IllegalArgumentException("Tile size must be at least 1!");
+		this.rows = rows;
+		this.cols = cols;
+		this.tileRows = tileRows;
+		this.tileCols = tileCols;
+		tilesY = Math.max(0, (rows - 2 + tileRows - 1) / tileRows);
+		tilesX = Math.max(0, (cols - 2 + tileCols - 1) / tileCols);
+		active = new boolean[tilesY * tilesX];
+
+		for (int ty = 0; ty < tilesY; ty++) {
+			for (int tx = 0; tx < tilesX; tx++) {
+				//the block from one cell before to one cell after the tile covers the bound it touches
+				int rowStart = rowStart(ty) - (ty == 0 ? 1 : 0);
+				int rowEnd = rowEnd(ty) + (ty == tilesY - 1 ? 1 : 0);
+				int colStart = colStart(tx) - (tx == 0 ? 1 : 0);
+				int colEnd = colEnd(tx) + (tx == tilesX - 1 ? 1 : 0);
+				if (!isZero(u, rowStart, rowEnd, colStart, colEnd))
+					activate(ty * tilesX + tx);
+			}
+		}
+		for (int tile = 0; tile < active.length; tile++)
+			if (active[tile])
+				checkEdges(u, tile / tilesX, tile % tilesX);
+	}
+
+	/**
+	 * One time step, next = u + velocity(u) for the whole grid. The bound of next is left untouched.
+	 */
+	public void step(double[] u, double[] next, double alpha, double deltaTime) {
+		if (isFull()) {
+			StencilKernel.step(u, next, cols, alpha, deltaTime, 1, rows - 1);
+			return;
+		}
+		for (int ty = 0; ty < tilesY; ty++) {
+			int tx = 0;
+			while (tx < tilesX) {
+				if (!active[ty * tilesX + tx]) {
+					tx++;
+					continue;
+				}
+				int first = tx;
+				while (tx < tilesX && active[ty * tilesX + tx])
+					tx++;
+				StencilKernel.step(u, next, cols, alpha, deltaTime, rowStart(ty), rowEnd(ty), colStart(first), colEnd(tx - 1));
+				for (int t = first; t < tx; t++)
+					checkEdges(next, ty, t);
+			}
+		}
+	}
+
+	/**
+	 * step(...) with the reduction of StencilKernel.stepReduce(...) into partial.
+	 */
+	public void stepReduce(double[] u, double[] next, double alpha, double deltaTime, double[] partial) {
+		if (isFull()) {
+			StencilKernel.stepReduce(u, next, cols, alpha, deltaTime, 1, rows - 1, partial);
+			return;
+		}
+		int calculated = 0;
+		for (int ty = 0; ty < tilesY; ty++) {
+			int tx = 0;
+			while (tx < tilesX) {
+				if (!active[ty * tilesX + tx]) {
+					tx++;
+					continue;
+				}
+				int first = tx;
+				while (tx < tilesX && active[ty * tilesX + tx])
+					tx++;
+				StencilKernel.stepReduce(u, next, cols, alpha, deltaTime, rowStart(ty), rowEnd(ty), colStart(first), colEnd(tx - 1), partial);
+				calculated += tx - first;
+				for (int t = first; t < tx; t++)
+					checkEdges(next, ty, t);
+			}
+		}
+		//tiles that were skipped, or joined after they were passed, hold 0
+		if (calculated < active.length) {
+			partial[0] = Math.min(partial[0], 0);
+			partial[1] = Math.max(partial[1], 0);
+		}
+	}
+
+	/**
+	 * Look for values that are not 0 on the edges of tile (ty,tx) that face tiles which are not active,
+	 * those tiles are activated.
+	 */
+	private void checkEdges(double[] u, int ty, int tx) {
+		int rowStart = rowStart(ty);
+		int rowEnd = rowEnd(ty);
+		int colStart = colStart(tx);
+		int colEnd = colEnd(tx);
+		if (ty > 0 && !active[(ty - 1) * tilesX + tx] && !isZero(u, rowStart, rowStart + 1, colStart, colEnd))
+			activate((ty - 1) * tilesX + tx);
+		if (ty < tilesY - 1 && !active[(ty + 1) * tilesX + tx] && !isZero(u, rowEnd - 1, rowEnd, colStart, colEnd))
+			activate((ty + 1) * tilesX + tx);
+		if (tx > 0 && !active[ty * tilesX + tx - 1] && !isZero(u, rowStart, rowEnd, colStart, colStart + 1))
+			activate(ty * tilesX + tx - 1);
+		if (tx < tilesX - 1 && !active[ty * tilesX + tx + 1] && !isZero(u, rowStart, rowEnd, colEnd - 1, colEnd))
+			activate(ty * tilesX + tx + 1);
+	}
+
+	/**
+	 * True if every value in the block is +0.0.
+	 */
+	private boolean isZero(double[] u, int rowStart, int rowEnd, int colStart, int colEnd) {
+		for (int i = rowStart; i < rowEnd; i++)
+			for (int pos = i * cols + colStart; pos < i * cols + colEnd; pos++)
+				if (Double.doubleToRawLongBits(u[pos]) != 0)
+					return false;
+		return true;
+	}
+
+	private void activate(int tile) {
+		if (active[tile]) return;
+		active[tile] = true;
+		activeCount++;
+	}
+
+	private int rowStart(int ty) { return 1 + ty * tileRows; }
+	private int rowEnd(int ty) { return Math.min(rows - 1, 1 + (ty + 1) * tileRows); }
+	private int colStart(int tx) { return 1 + tx * tileCols; }
+	private int colEnd(int tx) { return Math.min(cols - 1, 1 + (tx + 1) * tileCols); }
+
+	public int getActiveCount() { return activeCount; }
+
+	public int getTileCount() { return active.length; }
+
+	/**
+	 * True when every tile is active, the time steps then cover the whole grid.
+	 */
+	public boolean isFull() { return activeCount == active.length; }
+}
@@ -0,0 +1,245 @@
+package com;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * Runs a NumericalSolution as fast as possible without any window. Every time step is checked
+ * for stability by a TimeStepController, an unstable time step stops the run before it starts.
+ *
+ * Snapshots of the temperatures can be written every n-th time step. Fields are written as
+ * text, one row of the mesh per line with the values separated by commas. Checkpoints to resume
+ * the run from can be written as well, see CheckpointWriter, and snapshots can be streamed in
+ * binary or image formats, see SnapshotWriter.
+ *
+ * Nothing in this class (or the classes it uses) depends on javax.swing, so it can run on a
+ * headless machine.
+ */
+public class BatchRunner {
+
+	/**
+	 * Summary of a finished run.
+	 */
+	public static class Result {
+		private final long steps;
+		private final double simulatedTime;
+		private final double wallTime;
+
+		Result(long steps, double simulatedTime, double wallTime) {
+			this.steps = steps;
+			this.simulatedTime = simulatedTime;
+			this.wallTime = wallTime;
+		}
+
+		public long getSteps() { return steps; }
+		public double getSimulatedTime() { return simulatedTime; }
+
+		/**
+		 * Time in seconds spent stepping, writing snapshots included.
+		 */
+		public double getWallTime() { return wallTime; }
+
+		public double getStepsPerSecond() { return wallTime > 0 ? steps / wallTime : 0; }
+
+		@Override
+		public String toString() {
+			return String.format("steps: %d, simulated time: %.4f s, wall time: %.3f s, steps/sec: %.1f",
+					steps, simulatedTime, wallTime, getStepsPerSecond());
+		}
+	}
+
+	private final NumericalSolution ns;
+
+	private final TimeStepController controller;
+
+	/**
+	 * Writes a checkpoint every checkpointEvery time steps, null for no checkpoints.
+	 */
+	private CheckpointWriter checkpoints;
+	private long checkpointEvery;
+
+	/**
+	 * Streams a snapshot every exportEvery time steps, null for no export. With exportWait the run waits
+	 * for the writer instead of dropping snapshots.
+	 */
+	private SnapshotWriter export;
+	private long exportEvery;
+	private boolean exportWait = false;
+
+	/**
+	 * Where the time steps and temperatures are reported, null for no metrics.
+	 */
+	private SolverMetrics metrics;
+
+	public BatchRunner(NumericalSolution ns) {
+		this(ns, 0, 0);
+	}
+
+	/**
+	 * Runner continuing a run that has already been advanced, e.g. resumed from a Checkpoint.
+	 * Snapshots and checkpoints are numbered by the total amount of time steps.
+	 * @param time		Simulated time in seconds so far.
+	 * @param steps		Amount of time steps taken so far.
+	 */
+	public BatchRunner(NumericalSolution ns, double time, long steps) {
+		this.ns = ns;
+		controller = new TimeStepController(ns, TimeStepController.Policy.REJECT, time, steps);
+	}
+
+	/**
+	 * Write a checkpoint every checkpointEvery time steps and at the end of every run.
+	 * The checkpoints are written in the background, the writer has to be closed by the caller.
+	 * @param writer			Writer of the checkpoints, null for no checkpoints.
+	 * @param checkpointEvery	Amount of time steps between two checkpoints, 0 for only at the end.
+	 */
+	public void setCheckpoints(CheckpointWriter writer, long checkpointEvery) {
+		this.checkpoints = writer;
+		this.checkpointEvery = checkpointEvery;
+	}
+
+	/**
+	 * Stream a snapshot every exportEvery time steps, see SnapshotWriter. Snapshots are dropped
+	 * instead of waiting when the writer is behind. The writer has to be closed by the caller.
+	 * @param writer			Writer of the snapshots, null for no export.
+	 * @param exportEvery		Amount of time steps between two snapshots.
+	 */
+	public void setExport(SnapshotWriter writer, long exportEvery) {
+		setExport(writer, exportEvery, false);
+	}
+
+	/**
+	 * Same as setExport(writer, exportEvery), but with wait set the run waits for the writer when it is
+	 * behind (SnapshotWriter.put) so that no snapshot is dropped. The time steps then run at the speed
+	 * of the disk.
+	 */
+	public void setExport(SnapshotWriter writer, long exportEvery, boolean wait) {
+		if (writer != null && exportEvery < 1)
+			throw new IllegalArgumentException("Amount of time steps between two snapshots must be at least 1!");
+		this.export = writer;
+		this.exportEvery = exportEvery;
+		this.exportWait = wait;
+	}
+
+	/**
+	 * Report the time steps, the temperatures and the allocations of the thread calling run(...) to
+	 * metrics. null for no metrics.
+	 */
+	public void setMetrics(SolverMetrics metrics) {
+		this.metrics = metrics;
+		ns.setMetrics(metrics);
+	}
+
+	/**
+	 * Run the given amount of time steps.
+	 * @param steps				Amount of time steps.
+	 * @param deltaTime			Time step in seconds.
+	 * @param snapshotEvery		Write a snapshot every snapshotEvery time steps, 0 for no snapshots.
+	 * @param snapshotDir		Directory the snapshots are written to. Can be null if snapshotEvery is 0.
+	 * @return					Summary of the run.
+	 */
+	public Result run(long steps, double deltaTime, long snapshotEvery, Path snapshotDir) throws IOException {
+		if (!TimeStepController.isStable(ns.getAlpha(), deltaTime))
+			throw new IllegalArgumentException("Time step " + deltaTime + " is unstable, the largest stable time step is "
+					+ controller.getMaxDeltaTime());
+		if (snapshotEvery > 0)
+			Files.createDirectories(snapshotDir);
+
+		if (metrics != null)
+			metrics.watchThread(Thread.currentThread());
+		//the stats are only calculated for the metrics and the formats that read them, in the last time step of every
+		//group below, which ends at every snapshot
+		boolean exportStats = export != null && export.usesStats();
+		ns.setReductions(metrics != null || exportStats);
+		long start = System.nanoTime();
+		//the time steps between two snapshots or checkpoints are done in one go, which lets TILED mode do several per pass
+		for (long done = 0; done < steps; ) {
+			long step = controller.getSteps();
+			long count = steps - done;
+			if (snapshotEvery > 0)
+				count = Math.min(count, snapshotEvery - step % snapshotEvery);
+			if (checkpoints != null && checkpointEvery > 0)
+				count = Math.min(count, checkpointEvery - step % checkpointEvery);
+			if (export != null)
+				count = Math.min(count, exportEvery - step % exportEvery);
+			controller.step(deltaTime, count);
+			done += count;
+			step += count;
+			if (snapshotEvery > 0 && step % snapshotEvery == 0)
+				writeField(ns.getSolution(), snapshotDir.resolve(String.format("snapshot_%08d.csv", step)));
+			if (export != null && step % exportEvery == 0) {
+				if (exportWait)
+					export.put(ns.getSolution(), exportStats ? ns.getStats() : null, step, controller.getTime());
+				else
+					export.offer(ns.getSolution(), exportStats ? ns.getStats() : null, step, controller.getTime());
+			}
+			if (checkpoints != null && (done == steps || (checkpointEvery > 0 && step % checkpointEvery == 0)))
+				checkpoints.write(ns.getSolution(), ns.getAlpha(), controller.getTime(), step);
+			if (metrics != null)
+				metrics.field(ns.getStats());
+		}
+		double wallTime = (System.nanoTime() - start) / 1e9;
+		return new Result(steps, controller.getTime(), wallTime);
+	}
+
+	/**
+	 * Run until the given time is reached. The last time step is not shortened, so the
+	 * simulated time can pass endTime by less than one time step.
+	 * @param endTime			Simulated time in seconds to run to.
+	 * @see #run(long, double, long, Path)
+	 */
+	public Result runUntil(double endTime, double deltaTime, long snapshotEvery, Path snapshotDir) throws IOException {
+		long steps = (long) Math.ceil((endTime - controller.getTime()) / deltaTime - 1e-9);
+		return run(Math.max(steps, 0), deltaTime, snapshotEvery, snapshotDir);
+	}
+
+	public TimeStepController getController() {
+		return controller;
+	}
+
+	/**
+	 * Write the temperatures to a text file, one row per line separated by commas.
+	 */
+	public static void writeField(SimpleMatrix matrix, Path path) throws IOException {
+		int rows = matrix.getNumRows();
+		int cols = matrix.getNumCols();
+		try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+			StringBuilder line = new StringBuilder();
+			for (int i = 0; i < rows; i++) {
+				line.setLength(0);
+				for (int j = 0; j < cols; j++) {
+					if (j > 0) line.append(',');
+					line.append(matrix.get(i, j));
+				}
+				writer.write(line.toString());
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Same as writeField(SimpleMatrix, Path) for a MappedField, which is read one row at a time.
+	 */
+	public static void writeField(MappedField field, Path path) throws IOException {
+		int cols = field.getCols();
+		double[] row = new double[cols];
+		try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+			StringBuilder line = new StringBuilder();
+			for (int i = 0; i < field.getRows(); i++) {
+				field.getRow(i, row);
+				line.setLength(0);
+				for (int j = 0; j < cols; j++) {
+					if (j > 0) line.append(',');
+					line.append(row[j]);
+				}
+				writer.write(line.toString());
+				writer.newLine();
+			}
+		}
+	}
+}
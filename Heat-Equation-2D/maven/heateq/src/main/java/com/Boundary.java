@@ -0,0 +1,154 @@
+package com;
+
+/**
+ * @author Marius
+ *
+ * Boundary conditions for the edges of the grid. The outer ring of the grid (the bound) is a layer of
+ * ghost cells: the interior is the actual mesh, and fill(...) writes the ghost cells from the condition
+ * of every edge before a time step:
+ * 		- DIRICHLET:	The ghost cells hold a fixed temperature.
+ * 		- NEUMANN:		Insulated edge, the ghost cells copy the interior cells next to them so no heat
+ * 						flows through the edge.
+ * 		- PERIODIC:		The ghost cells copy the interior cells at the opposite edge, heat leaving on one
+ * 						side comes back on the other. Must be used on both opposite edges.
+ *
+ * Filling is a pass over the ring only, so the stencil itself needs no conditions and stays the same
+ * branch-free sweep for every kind of boundary (see StencilKernel). X_MIN and X_MAX are the first and
+ * last column, Y_MIN and Y_MAX the first and last row.
+ *
+ * A new Boundary is DIRICHLET with temperature 0 on every edge, which is what HeatSimulation sets up.
+ */
+public class Boundary {
+
+	public enum Type { DIRICHLET, NEUMANN, PERIODIC }
+
+	public enum Edge { X_MIN, X_MAX, Y_MIN, Y_MAX }
+
+	private final Type[] types = new Type[Edge.values().length];
+	private final double[] values = new double[Edge.values().length];
+
+	public Boundary() {
+		set(Type.DIRICHLET, 0);
+	}
+
+	/**
+	 * The same condition on every edge.
+	 * @param value		Temperature of DIRICHLET edges, not used by the other types.
+	 */
+	public Boundary(Type type, double value) {
+		set(type, value);
+	}
+
+	public void set(Type type, double value) {
+		for (Edge edge : Edge.values())
+			set(edge, type, value);
+	}
+
+	/**
+	 * @param value		Temperature of a DIRICHLET edge, not used by the other types.
+	 */
+	public void set(Edge edge, Type type, double value) {
+		types[edge.ordinal()] = type;
+		values[edge.ordinal()] = value;
+	}
+
+	public Type getType(Edge edge) { return types[edge.ordinal()]; }
+	public double getValue(Edge edge) { return values[edge.ordinal()]; }
+
+	/**
+	 * Throws an IllegalArgumentException if a PERIODIC edge is not paired with a PERIODIC opposite edge,
+	 * or if the grid has no interior to take the ghost cells from.
+	 */
+	public void check(int rows, int cols) {
+		if ((getType(Edge.X_MIN) == Type.PERIODIC) != (getType(Edge.X_MAX) == Type.PERIODIC)
+				|| (getType(Edge.Y_MIN) == Type.PERIODIC) != (getType(Edge.Y_MAX) == Type.PERIODIC))
+			throw new IllegalArgumentException("Periodic edges must be used on both opposite edges!");
+		if (rows < 3 || cols < 3)
+			throw new IllegalArgumentException("The grid needs at least one interior cell!");
+	}
+
+	/**
+	 * True if every edge is DIRICHLET, the ghost cells then never change.
+	 */
+	public boolean isFixed() {
+		for (Type type : types)
+			if (type != Type.DIRICHLET)
+				return false;
+		return true;
+	}
+
+	/**
+	 * True if every edge is DIRICHLET with temperature 0, the bound HeatSimulation sets up.
+	 */
+	public boolean isZero() {
+		for (int k = 0; k < types.length; k++)
+			if (types[k] != Type.DIRICHLET || values[k] != 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Smallest and largest DIRICHLET temperature, +-infinity without DIRICHLET edges. The other ghost cells
+	 * copy interior cells, so together with the interior this is the range of the whole grid.
+	 */
+	public double getMinValue() {
+		double min = Double.POSITIVE_INFINITY;
+		for (int k = 0; k < types.length; k++)
+			if (types[k] == Type.DIRICHLET)
+				min = Math.min(min, values[k]);
+		return min;
+	}
+
+	public double getMaxValue() {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int k = 0; k < types.length; k++)
+			if (types[k] == Type.DIRICHLET)
+				max = Math.max(max, values[k]);
+		return max;
+	}
+
+	/**
+	 * Write the ghost cells of u from the interior. The columns are filled first for the interior rows,
+	 * then the rows over the whole width, so the corners are taken from the filled columns. The corners
+	 * are not used by the 5-point stencil.
+	 * @param u		Flat row-major temperatures including the ghost cells.
+	 */
+	public void fill(double[] u, int rows, int cols) {
+		Type xMin = getType(Edge.X_MIN);
+		Type xMax = getType(Edge.X_MAX);
+		double xMinValue = getValue(Edge.X_MIN);
+		double xMaxValue = getValue(Edge.X_MAX);
+		for (int i = 1; i < rows - 1; i++) {
+			int row = i * cols;
+			u[row] = xMin == Type.DIRICHLET ? xMinValue : xMin == Type.NEUMANN ? u[row + 1] : u[row + cols - 2];
+			u[row + cols - 1] = xMax == Type.DIRICHLET ? xMaxValue : xMax == Type.NEUMANN ? u[row + cols - 2] : u[row + 1];
+		}
+		fillRow(u, cols, 0, getType(Edge.Y_MIN), getValue(Edge.Y_MIN), 1, rows - 2);
+		fillRow(u, cols, rows - 1, getType(Edge.Y_MAX), getValue(Edge.Y_MAX), rows - 2, 1);
+	}
+
+	/**
+	 * Fill the ghost row from the row next to it (NEUMANN) or the row at the opposite edge (PERIODIC).
+	 */
+	private static void fillRow(double[] u, int cols, int row, Type type, double value, int next, int opposite) {
+		if (type == Type.DIRICHLET) {
+			for (int j = 0; j < cols; j++)
+				u[row * cols + j] = value;
+			return;
+		}
+		int source = type == Type.NEUMANN ? next : opposite;
+		System.arraycopy(u, source * cols, u, row * cols, cols);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		for (Edge edge : Edge.values()) {
+			if (text.length() > 0) text.append(", ");
+			text.append(edge).append(": ").append(getType(edge));
+			if (getType(edge) == Type.DIRICHLET)
+				text.append(" ").append(getValue(edge));
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,271 @@
+package com;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * The state of a simulation that is needed to continue it later: the temperatures, alpha, the
+ * simulated time and the amount of time steps taken. An explicit time step only depends on the current
+ * temperatures, so a run resumed from a checkpoint gives exactly the same result as a run that never
+ * stopped.
+ *
+ * File format (big-endian):
+ * 		int MAGIC, int VERSION, int flags, int rows, int cols, double alpha, double time, long step,
+ * 		long payload length, payload.
+ * The payload is the temperatures as rows * cols doubles in row-major order. If the COMPRESSED flag
+ * is set the payload is compressed with Deflater.
+ *
+ * A checkpoint is first written to a temporary file which is then moved in place, so a crash while
+ * writing never destroys the previous checkpoint.
+ */
+public class Checkpoint {
+
+	private static final int MAGIC = 0x48455143; // "HEQC"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 52;
+
+	/**
+	 * Flag telling that the payload is compressed.
+	 */
+	private static final int COMPRESSED = 1;
+
+	/**
+	 * Size of the direct buffer used for reading and writing.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final SimpleMatrix field;
+	private final double alpha;
+	private final double time;
+	private final long step;
+
+	/**
+	 * @param field		Temperatures, including the bound. Not copied.
+	 * @param alpha		Thermal diffusivity constant.
+	 * @param time		Simulated time in seconds.
+	 * @param step		Amount of time steps taken.
+	 */
+	public Checkpoint(SimpleMatrix field, double alpha, double time, long step) {
+		this.field = field;
+		this.alpha = alpha;
+		this.time = time;
+		this.step = step;
+	}
+
+	public SimpleMatrix getField() { return field; }
+	public double getAlpha() { return alpha; }
+	public double getTime() { return time; }
+	public long getStep() { return step; }
+
+	/**
+	 * Write the checkpoint to a file.
+	 * @param path			File to write, an existing file is replaced.
+	 * @param compress		Compress the temperatures.
+	 */
+	public void write(Path path, boolean compress) throws IOException {
+		write(path, field.getDDRM().getData(), field.getNumRows(), field.getNumCols(), alpha, time, step, compress);
+	}
+
+	/**
+	 * Write a checkpoint of flat row-major temperatures to a file, see write(Path, boolean).
+	 */
+	static void write(Path path, double[] data, int rows, int cols, double alpha, double time, long step, boolean compress) throws IOException {
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE)) {
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(compress ? COMPRESSED : 0).putInt(rows).putInt(cols)
+				.putDouble(alpha).putDouble(time).putLong(step).putLong(0);
+			buffer.flip();
+			channel.write(buffer, 0);
+			channel.position(HEADER_SIZE);
+
+			long length = compress ? writeCompressed(channel, buffer, data, rows * cols) : writeRaw(channel, buffer, data, rows * cols);
+
+			//the payload length is only known now
+			buffer.clear();
+			buffer.putLong(length).flip();
+			channel.write(buffer, HEADER_SIZE - Long.BYTES);
+			channel.force(true);
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Read a checkpoint written by write(...).
+	 */
+	public static Checkpoint read(Path path) throws IOException {
+		return read(path, 0, -1);
+	}
+
+	/**
+	 * Read only the rows rowStart to rowEnd (exclusive) of a checkpoint, e.g. the part of the mesh owned by
+	 * one process. Only these rows are read from an uncompressed checkpoint, a compressed checkpoint has to
+	 * be decompressed from the start.
+	 * @param rowEnd	End of the rows (exclusive), -1 for all rows.
+	 * @return			Checkpoint whose field only contains the rows.
+	 */
+	public static Checkpoint read(Path path, int rowStart, int rowEnd) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer.limit(HEADER_SIZE);
+			readFully(channel, buffer);
+			buffer.flip();
+			if (buffer.getInt() != MAGIC)
+				throw new IOException(path + " is not a checkpoint!");
+			int version = buffer.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported checkpoint version " + version);
+			int flags = buffer.getInt();
+			int rows = buffer.getInt();
+			int cols = buffer.getInt();
+			double alpha = buffer.getDouble();
+			double time = buffer.getDouble();
+			long step = buffer.getLong();
+			long length = buffer.getLong();
+
+			if (rowEnd < 0)
+				rowEnd = rows;
+			if (rowStart < 0 || rowStart >= rowEnd || rowEnd > rows)
+				throw new IllegalArgumentException("Rows " + rowStart + " to " + rowEnd + " are outside the checkpoint!");
+
+			SimpleMatrix field = new SimpleMatrix(rowEnd - rowStart, cols);
+			double[] data = field.getDDRM().getData();
+			if ((flags & COMPRESSED) != 0) {
+				double[] all = rowEnd - rowStart == rows ? data : new double[rows * cols];
+				readCompressed(channel, buffer, all, length);
+				if (all != data)
+					System.arraycopy(all, rowStart * cols, data, 0, data.length);
+			}
+			else {
+				channel.position(HEADER_SIZE + (long) rowStart * cols * Double.BYTES);
+				readRaw(channel, buffer, data);
+			}
+			return new Checkpoint(field, alpha, time, step);
+		}
+	}
+
+	private static long writeRaw(FileChannel channel, ByteBuffer buffer, double[] data, int size) throws IOException {
+		long length = 0;
+		buffer.clear();
+		for (int i = 0; i < size; i++) {
+			if (buffer.remaining() < Double.BYTES)
+				length += drain(channel, buffer);
+			buffer.putDouble(data[i]);
+		}
+		return length + drain(channel, buffer);
+	}
+
+	private static long writeCompressed(FileChannel channel, ByteBuffer buffer, double[] data, int size) throws IOException {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		//the doubles are turned into bytes in a heap buffer which is fed to the deflater piece by piece
+		ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+		long length = 0;
+		buffer.clear();
+		try {
+			for (int i = 0; i < size; ) {
+				input.clear();
+				for (; i < size && input.remaining() >= Double.BYTES; i++)
+					input.putDouble(data[i]);
+				input.flip();
+				deflater.setInput(input);
+				while (!deflater.needsInput()) {
+					deflater.deflate(buffer);
+					length += drain(channel, buffer);
+				}
+			}
+			deflater.finish();
+			while (!deflater.finished()) {
+				deflater.deflate(buffer);
+				length += drain(channel, buffer);
+			}
+		}
+		finally {
+			deflater.end();
+		}
+		return length;
+	}
+
+	private static void readRaw(FileChannel channel, ByteBuffer buffer, double[] data) throws IOException {
+		buffer.clear().flip();
+		int i = 0;
+		while (i < data.length) {
+			if (buffer.remaining() < Double.BYTES) {
+				buffer.compact();
+				if (channel.read(buffer) < 0)
+					throw new IOException("Checkpoint is truncated!");
+				buffer.flip();
+				continue;
+			}
+			data[i++] = buffer.getDouble();
+		}
+	}
+
+	private static void readCompressed(FileChannel channel, ByteBuffer buffer, double[] data, long length) throws IOException {
+		Inflater inflater = new Inflater();
+		ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+		long remaining = length;
+		int i = 0;
+		try {
+			while (i < data.length) {
+				if (inflater.needsInput()) {
+					if (remaining <= 0)
+						throw new IOException("Checkpoint is truncated!");
+					buffer.clear();
+					buffer.limit((int) Math.min(buffer.capacity(), remaining));
+					int read = channel.read(buffer);
+					if (read < 0)
+						throw new IOException("Checkpoint is truncated!");
+					remaining -= read;
+					buffer.flip();
+					inflater.setInput(buffer);
+				}
+				inflater.inflate(output);
+				output.flip();
+				while (output.remaining() >= Double.BYTES && i < data.length)
+					data[i++] = output.getDouble();
+				output.compact();
+				//the stream ended (or needs a dictionary it does not have) before the field is full
+				if ((inflater.finished() || inflater.needsDictionary()) && i < data.length)
+					throw new IOException("Checkpoint is corrupt!");
+			}
+		}
+		catch (DataFormatException e) {
+			throw new IOException("Checkpoint is corrupt!", e);
+		}
+		finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Write everything in buffer to the channel and clear it.
+	 * @return		Amount of bytes written.
+	 */
+	private static int drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		int written = buffer.remaining();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+		return written;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			if (channel.read(buffer) < 0)
+				throw new IOException("Checkpoint is truncated!");
+	}
+}
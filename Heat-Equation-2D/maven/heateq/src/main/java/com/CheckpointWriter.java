@@ -0,0 +1,165 @@
+package com;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * Writes checkpoints on a background thread so that the stepping thread only pays for copying the
+ * temperatures. There are only two recycled buffers: the checkpoint being written and the next one
+ * waiting to be written.
+ *
+ * Every checkpoint replaces the previous one in the same file, so when the disk is slower than the
+ * checkpoints a waiting checkpoint is simply overwritten by the newer one (see getReplaced()) instead of
+ * piling up copies. An error while writing is kept and thrown by the next call to write(...) or close().
+ */
+public class CheckpointWriter implements AutoCloseable {
+
+	/**
+	 * A copy of the temperatures with the rest of the checkpoint.
+	 */
+	private static class Pending {
+		private double[] data = new double[0];
+		private int rows;
+		private int cols;
+		private double alpha;
+		private double time;
+		private long step;
+	}
+
+	private final Path path;
+
+	private final boolean compress;
+
+	private final Thread thread;
+
+	/**
+	 * Buffers that are not in use, and the checkpoint waiting to be written (null if there is none).
+	 * Guarded by this.
+	 */
+	private Pending free = new Pending();
+	private Pending spare = new Pending();
+	private Pending pending;
+	private boolean closed = false;
+
+	private volatile long replaced = 0;
+
+	private volatile IOException error;
+
+	/**
+	 * @param path			File the checkpoints are written to.
+	 * @param compress		Compress the temperatures, see Checkpoint.
+	 */
+	public CheckpointWriter(Path path, boolean compress) {
+		this.path = path;
+		this.compress = compress;
+		thread = new Thread(this::writeCheckpoints, "Checkpoint writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Copy the temperatures and write them in the background. Replaces the checkpoint that is still
+	 * waiting, if any.
+	 * @param field		Current temperatures, including the bound.
+	 * @param alpha		Thermal diffusivity constant.
+	 * @param time		Simulated time in seconds.
+	 * @param step		Amount of time steps taken.
+	 */
+	public synchronized void write(SimpleMatrix field, double alpha, double time, long step) throws IOException {
+		throwError();
+		if (closed)
+			throw new IllegalStateException("The checkpoint writer is closed!");
+		Pending next = pending;
+		if (next != null) {
+			replaced++;
+		}
+		else {
+			//at most one buffer is being written, so one of the two is free
+			next = free != null ? free : spare;
+			if (next == free) free = null;
+			else spare = null;
+		}
+		int rows = field.getNumRows();
+		int cols = field.getNumCols();
+		if (next.data.length != rows * cols)
+			next.data = new double[rows * cols];
+		System.arraycopy(field.getDDRM().getData(), 0, next.data, 0, rows * cols);
+		next.rows = rows;
+		next.cols = cols;
+		next.alpha = alpha;
+		next.time = time;
+		next.step = step;
+		pending = next;
+		notifyAll();
+	}
+
+	private void writeCheckpoints() {
+		while (true) {
+			Pending next;
+			synchronized (this) {
+				while (pending == null && !closed) {
+					try {
+						wait();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (pending == null)
+					return;
+				next = pending;
+				pending = null;
+			}
+			//after an error the checkpoints are only recycled
+			if (error == null) {
+				try {
+					Checkpoint.write(path, next.data, next.rows, next.cols, next.alpha, next.time, next.step, compress);
+				}
+				catch (IOException e) {
+					error = e;
+				}
+			}
+			synchronized (this) {
+				if (free == null) free = next;
+				else spare = next;
+			}
+		}
+	}
+
+	/**
+	 * Wait until the last checkpoint is written.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		throwError();
+	}
+
+	public Path getPath() { return path; }
+
+	/**
+	 * Amount of checkpoints that were replaced by a newer one before they were written.
+	 */
+	public long getReplaced() { return replaced; }
+
+	private void throwError() throws IOException {
+		IOException e = error;
+		if (e != null) {
+			error = null;
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com;
+
+/**
+ * @author Marius
+ *
+ * Matrix-free conjugate gradient solver for the linear systems that show up when the heat
+ * equation is solved implicitly. The system is
+ *
+ * 		sigma * u - s * L u = b
+ *
+ * where L is the same 5-point stencil as in StencilKernel (without alpha and deltaTime) and
+ * u is only unknown in the interior of the grid. The bound of u is fixed and is moved to the
+ * right hand side. For sigma >= 0 and s > 0 the system is symmetric positive definite.
+ *
+ * Grids are flat row-major double[] including the bound, see StencilKernel.
+ * The scratch buffers are created once, so solving does not allocate any memory.
+ */
+public class ConjugateGradient {
+
+	private final int rows;
+	private final int cols;
+
+	/**
+	 * Residual, search direction and the operator applied to the search direction.
+	 */
+	private final double[] r;
+	private final double[] p;
+	private final double[] ap;
+
+	/**
+	 * Relative residual of the last solve.
+	 */
+	private double residual;
+
+	public ConjugateGradient(int rows, int cols) {
+		this.rows = rows;
+		this.cols = cols;
+		r = new double[rows * cols];
+		p = new double[rows * cols];
+		ap = new double[rows * cols];
+	}
+
+	/**
+	 * Solve sigma * u - s * L u = b.
+	 * @param u				Initial guess of the interior and the fixed bound. Contains the solution afterwards.
+	 * @param b				Right hand side, only the interior is used.
+	 * @param sigma			Factor in front of u.
+	 * @param s				Factor in front of L u.
+	 * @param tolerance		Stop when |b - Au| / |b| is below this value.
+	 * @param maxIterations	Stop after this many iterations.
+	 * @return				Amount of iterations used.
+	 */
+	public int solve(double[] u, double[] b, double sigma, double s, double tolerance, int maxIterations) {
+		return solve(u, b, sigma, s, s, tolerance, maxIterations);
+	}
+
+	/**
+	 * Solve sigma * u - sx * Lx u - sy * Ly u = b, where Lx and Ly are the parts of L in the x and y
+	 * direction. Used by Multigrid, whose coarse grids do not always have the same spacing in x and y.
+	 * @param sx			Factor in front of Lx u.
+	 * @param sy			Factor in front of Ly u.
+	 * @see #solve(double[], double[], double, double, double, int)
+	 */
+	public int solve(double[] u, double[] b, double sigma, double sx, double sy, double tolerance, int maxIterations) {
+		//r = b - Au, p = r
+		double bNorm = 0;
+		double rr = 0;
+		for (int i = 1; i < rows - 1; i++) {
+			for (int pos = i * cols + 1; pos < i * cols + cols - 1; pos++) {
+				double lapX = u[pos - 1] - 2 * u[pos] + u[pos + 1];
+				double lapY = u[pos - cols] - 2 * u[pos] + u[pos + cols];
+				double val = b[pos] - (sigma * u[pos] - sx * lapX - sy * lapY);
+				r[pos] = val;
+				p[pos] = val;
+				rr += val * val;
+				bNorm += b[pos] * b[pos];
+			}
+		}
+		bNorm = Math.sqrt(bNorm);
+		if (bNorm == 0) bNorm = 1;
+
+		int iteration = 0;
+		residual = Math.sqrt(rr) / bNorm;
+		while (residual > tolerance && iteration < maxIterations) {
+			//ap = A p, the bound of p is always 0
+			double pAp = 0;
+			for (int i = 1; i < rows - 1; i++) {
+				for (int pos = i * cols + 1; pos < i * cols + cols - 1; pos++) {
+					double lapX = p[pos - 1] - 2 * p[pos] + p[pos + 1];
+					double lapY = p[pos - cols] - 2 * p[pos] + p[pos + cols];
+					double val = sigma * p[pos] - sx * lapX - sy * lapY;
+					ap[pos] = val;
+					pAp += p[pos] * val;
+				}
+			}
+			double step = rr / pAp;
+			double rrNew = 0;
+			for (int i = 1; i < rows - 1; i++) {
+				for (int pos = i * cols + 1; pos < i * cols + cols - 1; pos++) {
+					u[pos] += step * p[pos];
+					r[pos] -= step * ap[pos];
+					rrNew += r[pos] * r[pos];
+				}
+			}
+			double beta = rrNew / rr;
+			for (int i = 1; i < rows - 1; i++) {
+				for (int pos = i * cols + 1; pos < i * cols + cols - 1; pos++)
+					p[pos] = r[pos] + beta * p[pos];
+			}
+			rr = rrNew;
+			residual = Math.sqrt(rr) / bNorm;
+			iteration++;
+		}
+		return iteration;
+	}
+
+	/**
+	 * Relative residual |b - Au| / |b| after the last call to solve.
+	 */
+	public double getResidual() { return residual; }
+}
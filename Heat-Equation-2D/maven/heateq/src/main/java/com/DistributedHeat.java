@@ -0,0 +1,314 @@
+package com;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * Runs the simulation on several JVM processes, e.g. for meshes that do not fit on one machine.
+ *
+ * The inside of the mesh is split into strips of whole rows, one per process (see HaloWorker). After every
+ * time step neighboring processes exchange one row over TCP. The initial temperatures are handed to the
+ * processes as a Checkpoint from which every process only reads its own rows, and every process writes its
+ * rows to a file of its own which are put together at the end.
+ *
+ * The processes are started on this machine and talk over the loopback interface. To spread them over
+ * several machines only the addresses in HaloWorker would have to change.
+ *
+ * Usage:
+ * 		java -cp heateq.jar com.DistributedHeat --processes 4 --mesh 1000x1000 --steps 1000 --verify
+ * 		java -cp heateq.jar com.DistributedHeat --scaling 4
+ */
+public class DistributedHeat {
+
+	private static final String USAGE = String.join("\n",
+			"Usage: DistributedHeat [options] [--point x,y,z ...]",
+			"  --processes N          amount of processes (default 2)",
+			"  --mesh XxY             mesh size (default 500x500)",
+			"  --alpha A              thermal diffusivity constant (default 5)",
+			"  --dt DT                time step in seconds (default 0.1)",
+			"  --steps N              amount of time steps (default 100)",
+			"  --verify               compare the result to a single process NumericalSolution",
+			"  --out FILE             file for the final temperatures (default: not written)",
+			"  --scaling N            print strong and weak scaling for 1 to N processes and exit",
+			"Without points the initial temperature is a hot square in the middle of the mesh.");
+
+	/**
+	 * Summary of a distributed run.
+	 */
+	public static class Result {
+		private final SimpleMatrix field;
+		private final double stepTime;
+		private final double wallTime;
+
+		Result(SimpleMatrix field, double stepTime, double wallTime) {
+			this.field = field;
+			this.stepTime = stepTime;
+			this.wallTime = wallTime;
+		}
+
+		public SimpleMatrix getField() { return field; }
+
+		/**
+		 * Time in seconds the time steps took in the slowest process.
+		 */
+		public double getStepTime() { return stepTime; }
+
+		/**
+		 * Time in seconds for the whole run, starting the processes and reading the results included.
+		 */
+		public double getWallTime() { return wallTime; }
+	}
+
+	/**
+	 * Advance the temperatures on several processes.
+	 * @param initial		Initial temperatures, including the bound. Not changed.
+	 * @param alpha			Thermal diffusivity constant.
+	 * @param deltaTime		Time step in seconds.
+	 * @param steps			Amount of time steps.
+	 * @param processes		Amount of processes, at most the amount of rows inside the bound.
+	 * @return				Temperatures after the time steps and timings.
+	 */
+	public static Result run(SimpleMatrix initial, double alpha, double deltaTime, long steps, int processes) throws IOException {
+		int rows = initial.getNumRows();
+		int cols = initial.getNumCols();
+		if (processes < 1 || processes > rows - 2)
+			throw new IllegalArgumentException("Amount of processes must be between 1 and " + (rows - 2));
+		if (!TimeStepController.isStable(alpha, deltaTime))
+			throw new IllegalArgumentException("Time step " + deltaTime + " is unstable, the largest stable time step is "
+					+ TimeStepController.maxStableDeltaTime(alpha));
+
+		long begin = System.nanoTime();
+		Path dir = Files.createTempDirectory("heateq");
+		try {
+			Path checkpoint = dir.resolve("initial.chk");
+			new Checkpoint(initial, alpha, 0, 0).write(checkpoint, false);
+
+			String ports = freePorts(processes);
+			String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+			List<Process> workers = new ArrayList<>();
+			try {
+				for (int rank = 0; rank < processes; rank++) {
+					ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), HaloWorker.class.getName(),
+							checkpoint.toString(), String.valueOf(rank), String.valueOf(processes),
+							String.valueOf(stripStart(rows, processes, rank)), String.valueOf(stripStart(rows, processes, rank + 1)),
+							String.valueOf(steps), String.valueOf(deltaTime), dir.resolve("part" + rank).toString(), ports);
+					builder.inheritIO();
+					workers.add(builder.start());
+				}
+				waitFor(workers);
+			}
+			finally {
+				//when a worker failed its neighbors wait for halo rows that never come, they must not be left running
+				for (Process worker : workers)
+					worker.destroyForcibly();
+			}
+
+			//put the strips together, the bound is the same as in the initial temperatures
+			SimpleMatrix field = initial.copy();
+			double[] data = field.getDDRM().getData();
+			double stepTime = 0;
+			for (int rank = 0; rank < processes; rank++) {
+				int start = stripStart(rows, processes, rank);
+				int end = stripStart(rows, processes, rank + 1);
+				try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(dir.resolve("part" + rank)), 1 << 16))) {
+					stepTime = Math.max(stepTime, in.readDouble());
+					for (int pos = start * cols; pos < end * cols; pos++)
+						data[pos] = in.readDouble();
+				}
+			}
+			return new Result(field, stepTime, (System.nanoTime() - begin) / 1e9);
+		}
+		finally {
+			try (var files = Files.walk(dir)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	/**
+	 * Wait until all the workers are done. Fails as soon as any of them failed, not only when it is the
+	 * next one in line.
+	 */
+	private static void waitFor(List<Process> workers) throws IOException {
+		try {
+			for (Process worker : workers)
+				while (!worker.waitFor(100, TimeUnit.MILLISECONDS))
+					checkExitValues(workers);
+			checkExitValues(workers);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the workers", e);
+		}
+	}
+
+	private static void checkExitValues(List<Process> workers) throws IOException {
+		for (Process worker : workers)
+			if (!worker.isAlive() && worker.exitValue() != 0)
+				throw new IOException("A worker process failed with exit code " + worker.exitValue());
+	}
+
+	/**
+	 * First row owned by the given process. The rows inside the bound are split as evenly as possible,
+	 * stripStart(rows, processes, processes) is the last row of the mesh.
+	 */
+	static int stripStart(int rows, int processes, int rank) {
+		return 1 + (int) ((long) (rows - 2) * rank / processes);
+	}
+
+	/**
+	 * Ports that are free right now, one per process, separated by commas.
+	 */
+	private static String freePorts(int processes) throws IOException {
+		List<ServerSocket> sockets = new ArrayList<>();
+		StringBuilder ports = new StringBuilder();
+		try {
+			for (int i = 0; i < processes; i++) {
+				ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+				sockets.add(socket);
+				if (i > 0) ports.append(',');
+				ports.append(socket.getLocalPort());
+			}
+		}
+		finally {
+			for (ServerSocket socket : sockets)
+				socket.close();
+		}
+		return ports.toString();
+	}
+
+	/**
+	 * Hot square in the middle of the mesh, used when no points are given.
+	 */
+	private static SimpleMatrix hotSquare(int meshX, int meshY) {
+		SimpleMatrix matrix = new SimpleMatrix(meshY, meshX);
+		for (int i = meshY / 4; i < 3 * meshY / 4; i++)
+			for (int j = meshX / 4; j < 3 * meshX / 4; j++)
+				matrix.set(i, j, 255);
+		return matrix;
+	}
+
+	/**
+	 * Strong scaling (same mesh, more processes) and weak scaling (the mesh grows with the processes)
+	 * for 1 to maxProcesses processes.
+	 */
+	private static void scaling(int maxProcesses, double alpha, double deltaTime, long steps) throws IOException {
+		final int size = 1000;
+		final int rowsPerProcess = 250;
+		System.out.println("Strong scaling, " + size + "x" + size + " mesh, " + steps + " steps");
+		System.out.println("processes  step time (s)  speedup  efficiency");
+		double base = 0;
+		for (int p = 1; p <= maxProcesses; p++) {
+			Result result = run(hotSquare(size, size), alpha, deltaTime, steps, p);
+			if (p == 1) base = result.getStepTime();
+			System.out.printf("%9d  %13.3f  %7.2f  %10.2f%n", p, result.getStepTime(), base / result.getStepTime(), base / result.getStepTime() / p);
+		}
+		System.out.println("Weak scaling, " + size + " columns and " + rowsPerProcess + " rows per process, " + steps + " steps");
+		System.out.println("processes  mesh        step time (s)  efficiency");
+		for (int p = 1; p <= maxProcesses; p++) {
+			int rows = rowsPerProcess * p + 2;
+			Result result = run(hotSquare(size, rows), alpha, deltaTime, steps, p);
+			if (p == 1) base = result.getStepTime();
+			System.out.printf("%9d  %-10s  %13.3f  %10.2f%n", p, size + "x" + rows, result.getStepTime(), base / result.getStepTime());
+		}
+	}
+
+	public static void main(String[] args) {
+		int processes = 2;
+		int meshX = 500;
+		int meshY = 500;
+		double alpha = 5;
+		double deltaTime = 0.1;
+		long steps = 100;
+		boolean verify = false;
+		Path out = null;
+		int scaling = 0;
+		List<Vertex> points = new ArrayList<>();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("--help")) {
+					System.out.println(USAGE);
+					return;
+				}
+				if (arg.equals("--verify")) {
+					verify = true;
+					continue;
+				}
+				if (i + 1 >= args.length)
+					throw new IllegalArgumentException("Missing value for " + arg);
+				String value = args[++i];
+				switch (arg) {
+				case "--processes":		processes = Integer.parseInt(value); break;
+				case "--mesh":
+					String[] size = value.toLowerCase().split("x");
+					if (size.length != 2) throw new IllegalArgumentException("Mesh size must be on the form XxY");
+					meshX = Integer.parseInt(size[0]);
+					meshY = Integer.parseInt(size[1]);
+					break;
+				case "--alpha":			alpha = Double.parseDouble(value); break;
+				case "--dt":			deltaTime = Double.parseDouble(value); break;
+				case "--steps":			steps = Long.parseLong(value); break;
+				case "--out":			out = Paths.get(value); break;
+				case "--scaling":		scaling = Integer.parseInt(value); break;
+				case "--point":
+					String[] xyz = value.split(",");
+					if (xyz.length != 3) throw new IllegalArgumentException("Point must be on the form x,y,z");
+					points.add(new Vertex(Double.parseDouble(xyz[0]), Double.parseDouble(xyz[1]), Double.parseDouble(xyz[2])));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		try {
+			if (scaling > 0) {
+				scaling(scaling, alpha, deltaTime, steps);
+				return;
+			}
+			SimpleMatrix initial = points.isEmpty()
+					? hotSquare(meshX, meshY)
+					: new HeatSimulation().setupSimulation(points, alpha, meshX, meshY, NumericalSolution.Mode.DOUBLE_BUFFER).getSolution();
+			Result result = run(initial, alpha, deltaTime, steps, processes);
+			System.out.printf("processes: %d, steps: %d, step time: %.3f s, wall time: %.3f s%n",
+					processes, steps, result.getStepTime(), result.getWallTime());
+			if (verify) {
+				NumericalSolution ns = new NumericalSolution(initial.copy(), alpha, NumericalSolution.Mode.DOUBLE_BUFFER);
+				ns.advance(steps, deltaTime);
+				double[] expected = ns.getSolution().getDDRM().getData();
+				double[] actual = result.getField().getDDRM().getData();
+				double maxDiff = 0;
+				for (int i = 0; i < expected.length; i++)
+					maxDiff = Math.max(maxDiff, Math.abs(expected[i] - actual[i]));
+				System.out.println("largest difference to a single process: " + maxDiff);
+			}
+			if (out != null)
+				BatchRunner.writeField(result.getField(), out);
+		}
+		catch (IOException | IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -1,46 +1,64 @@
-package com;
-
-import java.awt.Color;
-import javax.swing.*;
-
-public class Drawer extends JComponent {
-	
-	/**
-	 * Compiler Warning if this is not present.
-	 */
-	private static final long serialVersionUID = 1L;
-
-	/**
-	 * Label that is added to primaryPanel. It contains information about the simulation.
-	 */
-	static JLabel infoLabel;
-	
-	/**
-	 * This is the empty window that contains the primary panel. 
-	 */
-	static JFrame frame;
-	
-	public static void createWindow(NumericalSolution ns, int SCREENWIDTH, int SCREENHEIGHT, int PADDINGX, int PADDINGY, int PIXELSIZE) {
-	    frame = new JFrame("Heat Equation 2D");
-	    frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-	    frame.setBackground(Color.gray);
-	    frame.setSize(SCREENWIDTH, SCREENHEIGHT);
-	    frame.setVisible(true);
-		frame.setResizable(true); //need to be true, if not the canvas might not show anything!
-		//Finding Origin
-		final int ORIGINX = SCREENWIDTH / 2  + PADDINGX;
-		final int ORIGINY = SCREENHEIGHT / 2 - PADDINGY;
-			    
-		PrimaryPanel panel = new PrimaryPanel(ns, ORIGINX, ORIGINY, PIXELSIZE);
-	    frame.add(panel);
-	    //create infoLabel for time
-	    infoLabel = new JLabel();
-	    panel.add(infoLabel);
-	}
-	
-	public static void UpdateFrame(int n) { 
-		frame.repaint();
-		//update infoLabel text for time
-		infoLabel.setText("Time:    " + String.valueOf(n) + " seconds");
-	}	
+package com;
+
+import java.awt.Color;
+import javax.swing.*;
+
+public class Drawer extends JComponent {
+	
+	/**
+	 * Compiler Warning if this is not present.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Label that is added to primaryPanel. It contains information about the simulation.
+	 */
+	static JLabel infoLabel;
+	
+	/**
+	 * This is the empty window that contains the primary panel. 
+	 */
+	static JFrame frame;
+	
+	/**
+	 * Shown in infoLabel when not null.
+	 */
+	static SolverMetrics metrics;
+	
+	public static void createWindow(FrameExchange exchange, int SCREENWIDTH, int SCREENHEIGHT, int PADDINGX, int PADDINGY, int PIXELSIZE) {
+		createWindow(exchange, null, SCREENWIDTH, SCREENHEIGHT, PADDINGX, PADDINGY, PIXELSIZE);
+	}
+	
+	/**
+	 * Same as createWindow(exchange, ...) but the time of drawing is reported to metrics and the info
+	 * label also shows the time steps per second and the largest temperature.
+	 */
+	public static void createWindow(FrameExchange exchange, SolverMetrics metrics, int SCREENWIDTH, int SCREENHEIGHT, int PADDINGX, int PADDINGY, int PIXELSIZE) {
+		Drawer.metrics = metrics;
+	    frame = new JFrame("Heat Equation 2D");
+	    frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+	    frame.setBackground(Color.gray);
+	    frame.setSize(SCREENWIDTH, SCREENHEIGHT);
+	    frame.setVisible(true);
+		frame.setResizable(true); //need to be true, if not the canvas might not show anything!
+		//Finding Origin
+		final int ORIGINX = SCREENWIDTH / 2  + PADDINGX;
+		final int ORIGINY = SCREENHEIGHT / 2 - PADDINGY;
+			    
+		PrimaryPanel panel = new PrimaryPanel(exchange, metrics, ORIGINX, ORIGINY, PIXELSIZE);
+	    frame.add(panel);
+	    //create infoLabel for time
+	    infoLabel = new JLabel();
+	    panel.add(infoLabel);
+	}
+	
+	public static void UpdateFrame(int n) { 
+		frame.repaint();
+		//update infoLabel text for time
+		if (metrics == null)
+			infoLabel.setText("Time:    " + String.valueOf(n) + " seconds");
+		else
+			infoLabel.setText(String.format("Time:    %d seconds    Steps: %d    Steps/sec: %.0f    Max: %.1f",
+					n, metrics.getSteps(), metrics.getStepsPerSecond(), metrics.getMaxTemperature()));
+	}	
 }
\ No newline at end of file
@@ -0,0 +1,441 @@
+package com;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * @author Marius
+ *
+ * Runs many independent simulations, e.g. a parameter sweep over alpha, deltaTime and the input points,
+ * in one JVM on a shared thread pool.
+ *
+ * Every run is set up like HeatSimulation.setupSimulation(...) and stepped like the DOUBLE_BUFFER mode of
+ * NumericalSolution, so the temperatures are exactly the same as in a single simulation. Only a Summary of
+ * each run is kept, the fields are thrown away.
+ *
+ * Each thread of the pool keeps its two grids and reuses them for all the runs it does, they only grow when
+ * a run needs a larger mesh. Small meshes are put together in batches which are run one after the other by
+ * the same thread: a small mesh fits in the cache of its core for all of its time steps, and a batch is
+ * large enough to make the cost of handing out tasks negligible. Larger meshes are a task of their own.
+ *
+ * Usage:
+ * 		java -cp heateq.jar com.Ensemble --alphas 1,2,5 --dts 0.05,0.1 --sets 100 --mesh 50x50 --out sweep.csv
+ */
+public class Ensemble implements AutoCloseable {
+
+	/**
+	 * Meshes with at most this many cells are batched.
+	 */
+	private static final int SMALL_CELLS = 128 * 128;
+
+	/**
+	 * Amount of batches per thread. More batches than threads evens out the load between threads.
+	 */
+	private static final int BATCHES_PER_THREAD = 4;
+
+	private static final String USAGE = String.join("\n",
+			"Usage: Ensemble [options] [--point x,y,z ...]",
+			"  --alphas A,B,...       thermal diffusivity constants (default 5)",
+			"  --dts DT,DT,...        time steps in seconds (default 0.1)",
+			"  --steps N              amount of time steps per run (default 100)",
+			"  --mesh XxY             mesh size (default 50x50)",
+			"  --sets N               amount of random point sets (default 10, ignored when points are given)",
+			"  --points N             amount of points in a random set (default 4)",
+			"  --seed S               seed of the random point sets (default 42)",
+			"  --threads N            amount of threads (default: all cores)",
+			"  --out FILE             file for the summaries (default: printed)",
+			"Every combination of alpha, time step and point set is run.");
+
+	/**
+	 * One simulation of an ensemble.
+	 */
+	public static class Run {
+		private final List<Vertex> points;
+		private final double alpha;
+		private final double deltaTime;
+		private final long steps;
+		private final int meshX;
+		private final int meshY;
+		private final HeatSimulation.Fit fit;
+
+		/**
+		 * Same as Run(points, alpha, deltaTime, steps, meshX, meshY, fit) with a polynomial surface.
+		 */
+		public Run(List<Vertex> points, double alpha, double deltaTime, long steps, int meshX, int meshY) {
+			this(points, alpha, deltaTime, steps, meshX, meshY, HeatSimulation.Fit.POLYNOMIAL);
+		}
+
+		/**
+		 * @param points		Used to create the initial temperatures, see HeatSimulation.setupSimulation(...).
+		 * @param alpha			Thermal diffusivity constant.
+		 * @param deltaTime		Time step in seconds.
+		 * @param steps			Amount of time steps.
+		 * @param meshX			Mesh size in x direction.
+		 * @param meshY			Mesh size in y direction.
+		 * @param fit			Kind of surface through the points.
+		 */
+		public Run(List<Vertex> points, double alpha, double deltaTime, long steps, int meshX, int meshY, HeatSimulation.Fit fit) {
+			this.points = points;
+			this.alpha = alpha;
+			this.deltaTime = deltaTime;
+			this.steps = steps;
+			this.meshX = meshX;
+			this.meshY = meshY;
+			this.fit = fit;
+		}
+
+		public List<Vertex> getPoints() { return points; }
+		public double getAlpha() { return alpha; }
+		public double getDeltaTime() { return deltaTime; }
+		public long getSteps() { return steps; }
+		public int getMeshX() { return meshX; }
+		public int getMeshY() { return meshY; }
+		public HeatSimulation.Fit getFit() { return fit; }
+
+		int cells() { return meshX * meshY; }
+	}
+
+	/**
+	 * Result of one run. The temperatures are taken over the whole mesh, the mean only over the inside
+	 * of the bound. If the run failed, getError() tells why and the temperatures are NaN.
+	 */
+	public static class Summary {
+		private final Run run;
+		private final boolean stable;
+		private final double initialMax;
+		private final double initialMean;
+		private final double max;
+		private final double min;
+		private final double mean;
+		private final double wallTime;
+		private final String error;
+
+		Summary(Run run, double initialMax, double initialMean, double max, double min, double mean, double wallTime, String error) {
+			this.run = run;
+			this.stable = TimeStepController.isStable(run.alpha, run.deltaTime);
+			this.initialMax = initialMax;
+			this.initialMean = initialMean;
+			this.max = max;
+			this.min = min;
+			this.mean = mean;
+			this.wallTime = wallTime;
+			this.error = error;
+		}
+
+		public Run getRun() { return run; }
+
+		/**
+		 * False if the time step is too large for alpha, the temperatures are then meaningless.
+		 */
+		public boolean isStable() { return stable; }
+
+		public double getInitialMax() { return initialMax; }
+		public double getInitialMean() { return initialMean; }
+		public double getMax() { return max; }
+		public double getMin() { return min; }
+		public double getMean() { return mean; }
+
+		/**
+		 * Time in seconds the run took, the setup included.
+		 */
+		public double getWallTime() { return wallTime; }
+
+		/**
+		 * Why the run failed, null if it did not.
+		 */
+		public String getError() { return error; }
+
+		static String header() {
+			return "alpha,deltaTime,steps,meshX,meshY,points,stable,initialMax,initialMean,max,min,mean,wallTime,error";
+		}
+
+		@Override
+		public String toString() {
+			return run.alpha + "," + run.deltaTime + "," + run.steps + "," + run.meshX + "," + run.meshY + ","
+					+ run.points.size() + "," + stable + "," + initialMax + "," + initialMean + "," + max + ","
+					+ min + "," + mean + "," + wallTime + "," + (error == null ? "" : "\"" + error.replace("\"", "'") + "\"");
+		}
+	}
+
+	/**
+	 * The two grids of a thread, reused for every run.
+	 */
+	private static final class Buffers {
+		double[] u = new double[0];
+		double[] next = new double[0];
+
+		void ensure(int cells) {
+			if (u.length < cells) {
+				u = new double[cells];
+				next = new double[cells];
+			}
+		}
+	}
+
+	private final ForkJoinPool pool;
+
+	private final int threads;
+
+	private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+	private final HeatSimulation simulation = new HeatSimulation();
+
+	/**
+	 * @param threads	Size of the thread pool.
+	 */
+	public Ensemble(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Amount of threads must be at least 1!");
+		this.threads = threads;
+		pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Run all the simulations and wait for them to finish. A run that fails does not stop the others.
+	 * @return	One summary per run, in the same order as the runs.
+	 */
+	public List<Summary> run(List<Run> runs) {
+		Summary[] summaries = new Summary[runs.size()];
+		List<Future<?>> tasks = new ArrayList<>();
+
+		//the small runs are split into batches of about the same amount of work
+		double smallWork = 0;
+		for (Run run : runs)
+			if (run.cells() <= SMALL_CELLS)
+				smallWork += (double) run.cells() * run.steps;
+		double batchWork = smallWork / (threads * BATCHES_PER_THREAD);
+		List<Integer> batch = new ArrayList<>();
+		double work = 0;
+		for (int k = 0; k < runs.size(); k++) {
+			Run run = runs.get(k);
+			if (run.cells() > SMALL_CELLS) {
+				final int index = k;
+				tasks.add(pool.submit(() -> { summaries[index] = simulate(runs.get(index)); }));
+				continue;
+			}
+			batch.add(k);
+			work += (double) run.cells() * run.steps;
+			if (work >= batchWork) {
+				tasks.add(submitBatch(runs, batch, summaries));
+				batch = new ArrayList<>();
+				work = 0;
+			}
+		}
+		if (!batch.isEmpty())
+			tasks.add(submitBatch(runs, batch, summaries));
+
+		for (Future<?> task : tasks) {
+			try {
+				task.get();
+			}
+			catch (InterruptedException e) {
+				tasks.forEach(t -> t.cancel(true));
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for the runs", e);
+			}
+			catch (ExecutionException e) {
+				//simulate(...) catches the errors of the runs, so this is a bug
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return Arrays.asList(summaries);
+	}
+
+	/**
+	 * Write the summaries as comma separated values with a header line.
+	 */
+	public static void writeSummaries(List<Summary> summaries, Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+			writer.write(Summary.header());
+			writer.newLine();
+			for (Summary summary : summaries) {
+				writer.write(summary.toString());
+				writer.newLine();
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+
+	private Future<?> submitBatch(List<Run> runs, List<Integer> batch, Summary[] summaries) {
+		return pool.submit(() -> {
+			for (int index : batch)
+				summaries[index] = simulate(runs.get(index));
+		});
+	}
+
+	/**
+	 * Set up and run one simulation on the grids of the current thread.
+	 */
+	private Summary simulate(Run run) {
+		long begin = System.nanoTime();
+		try {
+			int rows = run.meshY;
+			int cols = run.meshX;
+			int cells = rows * cols;
+			if (rows < 3 || cols < 3)
+				throw new IllegalArgumentException("Mesh must be at least 3x3!");
+			if (run.points.isEmpty())
+				throw new IllegalArgumentException("The list containing points is empty!");
+			Buffers grids = buffers.get();
+			grids.ensure(cells);
+			double[] u = grids.u;
+			double[] next = grids.next;
+			//the bound is 0, the interior is overwritten anyway
+			Arrays.fill(u, 0, cells, 0);
+			Arrays.fill(next, 0, cells, 0);
+
+			Surface surface = run.fit == HeatSimulation.Fit.RADIAL_BASIS
+					? new RadialBasisSurface(run.points)
+					: simulation.CreateSplineSurface(run.points);
+			simulation.projectInto(surface, cols, rows, u, false);
+			double initialMax = max(u, cells);
+			double initialMean = mean(u, rows, cols);
+
+			for (long s = 0; s < run.steps; s++) {
+				StencilKernel.step(u, next, rows, cols, run.alpha, run.deltaTime);
+				double[] tmp = u;
+				u = next;
+				next = tmp;
+			}
+			double min = Double.POSITIVE_INFINITY;
+			for (int pos = 0; pos < cells; pos++)
+				min = Math.min(min, u[pos]);
+			return new Summary(run, initialMax, initialMean, max(u, cells), min, mean(u, rows, cols),
+					(System.nanoTime() - begin) / 1e9, null);
+		}
+		catch (RuntimeException e) {
+			return new Summary(run, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN,
+					(System.nanoTime() - begin) / 1e9, e.getMessage() == null ? e.toString() : e.getMessage());
+		}
+	}
+
+	private static double max(double[] u, int cells) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int pos = 0; pos < cells; pos++)
+			max = Math.max(max, u[pos]);
+		return max;
+	}
+
+	private static double mean(double[] u, int rows, int cols) {
+		double sum = 0;
+		for (int i = 1; i < rows - 1; i++)
+			for (int pos = i * cols + 1; pos < i * cols + cols - 1; pos++)
+				sum += u[pos];
+		return sum / ((rows - 2) * (cols - 2));
+	}
+
+	public static void main(String[] args) {
+		double[] alphas = { 5 };
+		double[] deltaTimes = { 0.1 };
+		long steps = 100;
+		int meshX = 50;
+		int meshY = 50;
+		int sets = 10;
+		int pointsPerSet = 4;
+		long seed = 42;
+		int threads = Runtime.getRuntime().availableProcessors();
+		Path out = null;
+		List<Vertex> points = new ArrayList<>();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("--help")) {
+					System.out.println(USAGE);
+					return;
+				}
+				if (i + 1 >= args.length)
+					throw new IllegalArgumentException("Missing value for " + arg);
+				String value = args[++i];
+				switch (arg) {
+				case "--alphas":		alphas = parseList(value); break;
+				case "--dts":			deltaTimes = parseList(value); break;
+				case "--steps":			steps = Long.parseLong(value); break;
+				case "--mesh":
+					String[] size = value.toLowerCase().split("x");
+					if (size.length != 2) throw new IllegalArgumentException("Mesh size must be on the form XxY");
+					meshX = Integer.parseInt(size[0]);
+					meshY = Integer.parseInt(size[1]);
+					break;
+				case "--sets":			sets = Integer.parseInt(value); break;
+				case "--points":		pointsPerSet = Integer.parseInt(value); break;
+				case "--seed":			seed = Long.parseLong(value); break;
+				case "--threads":		threads = Integer.parseInt(value); break;
+				case "--out":			out = Paths.get(value); break;
+				case "--point":
+					String[] xyz = value.split(",");
+					if (xyz.length != 3) throw new IllegalArgumentException("Point must be on the form x,y,z");
+					points.add(new Vertex(Double.parseDouble(xyz[0]), Double.parseDouble(xyz[1]), Double.parseDouble(xyz[2])));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		//random point sets inside the mesh, like the benchmarks use
+		List<List<Vertex>> pointSets = new ArrayList<>();
+		if (!points.isEmpty()) {
+			pointSets.add(points);
+		}
+		else {
+			Random random = new Random(seed);
+			for (int k = 0; k < sets; k++) {
+				List<Vertex> set = new ArrayList<>();
+				for (int n = 0; n < pointsPerSet; n++)
+					set.add(new Vertex(random.nextDouble() * (meshX - 1), random.nextDouble() * (meshY - 1), random.nextDouble() * 255));
+				pointSets.add(set);
+			}
+		}
+		List<Run> runs = new ArrayList<>();
+		for (double alpha : alphas)
+			for (double deltaTime : deltaTimes)
+				for (List<Vertex> set : pointSets)
+					runs.add(new Run(set, alpha, deltaTime, steps, meshX, meshY));
+
+		long begin = System.nanoTime();
+		List<Summary> summaries;
+		try (Ensemble ensemble = new Ensemble(threads)) {
+			summaries = ensemble.run(runs);
+		}
+		double seconds = (System.nanoTime() - begin) / 1e9;
+		try {
+			if (out != null) {
+				writeSummaries(summaries, out);
+			}
+			else {
+				System.out.println(Summary.header());
+				summaries.forEach(System.out::println);
+			}
+		}
+		catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		long failed = summaries.stream().filter(s -> s.getError() != null).count();
+		System.out.printf("%d runs on %d threads in %.3f s, %d failed%n", runs.size(), threads, seconds, failed);
+	}
+
+	private static double[] parseList(String value) {
+		return Arrays.stream(value.split(",")).mapToDouble(Double::parseDouble).toArray();
+	}
+}
@@ -0,0 +1,166 @@
+package com;
+
+/**
+ * @author Marius
+ *
+ * Fast Fourier transform of complex sequences of any length n,
+ *
+ * 		X_k = sum_j x_j * exp(-2 pi i j k / n)
+ *
+ * Lengths that are a power of two use the iterative radix-2 algorithm. Other lengths use Bluestein's
+ * algorithm, which writes the transform as a convolution and does the convolution with radix-2 transforms
+ * of length at least 2n - 1, so every length takes O(n log n) time.
+ *
+ * The twiddle factors and scratch buffers are created once, so transforming does not allocate memory.
+ * An FFT must therefore not be used by several threads at the same time.
+ */
+public final class FFT {
+
+	private final int n;
+
+	/**
+	 * Radix-2: the twiddle factors exp(-2 pi i k / n) for k < n/2 and the bit reversal permutation.
+	 */
+	private final double[] cos;
+	private final double[] sin;
+	private final int[] reversed;
+
+	/**
+	 * Bluestein: the chirp exp(-pi i k^2 / n), the transform of the convolution filter and the
+	 * radix-2 FFT doing the convolution. Null for powers of two.
+	 */
+	private final double[] chirpRe;
+	private final double[] chirpIm;
+	private final double[] filterRe;
+	private final double[] filterIm;
+	private final FFT convolution;
+	private final double[] workRe;
+	private final double[] workIm;
+
+	public FFT(int n) {
+		if (n < 1)
+			throw new IllegalArgumentException("Length must be at least 1!");
+		this.n = n;
+		if ((n & (n - 1)) == 0) {
+			cos = new double[n / 2];
+			sin = new double[n / 2];
+			for (int k = 0; k < n / 2; k++) {
+				cos[k] = Math.cos(2 * Math.PI * k / n);
+				sin[k] = -Math.sin(2 * Math.PI * k / n);
+			}
+			reversed = new int[n];
+			int bits = Integer.numberOfTrailingZeros(n);
+			for (int k = 0; k < n; k++)
+				reversed[k] = bits == 0 ? 0 : Integer.reverse(k) >>> (32 - bits);
+			chirpRe = chirpIm = filterRe = filterIm = workRe = workIm = null;
+			convolution = null;
+			return;
+		}
+		cos = sin = null;
+		reversed = null;
+		int m = Integer.highestOneBit(2 * n - 1) << 1;
+		convolution = new FFT(m);
+		chirpRe = new double[n];
+		chirpIm = new double[n];
+		for (int k = 0; k < n; k++) {
+			//k^2 mod 2n keeps the angle small, so it stays accurate for large k
+			long k2 = (long) k * k % (2L * n);
+			double angle = Math.PI * k2 / n;
+			chirpRe[k] = Math.cos(angle);
+			chirpIm[k] = -Math.sin(angle);
+		}
+		//the filter is the conjugated chirp, wrapped around for the negative indices
+		filterRe = new double[m];
+		filterIm = new double[m];
+		filterRe[0] = chirpRe[0];
+		filterIm[0] = -chirpIm[0];
+		for (int k = 1; k < n; k++) {
+			filterRe[k] = filterRe[m - k] = chirpRe[k];
+			filterIm[k] = filterIm[m - k] = -chirpIm[k];
+		}
+		convolution.transform(filterRe, filterIm);
+		workRe = new double[m];
+		workIm = new double[m];
+	}
+
+	public int getLength() { return n; }
+
+	/**
+	 * Transform the sequence in place.
+	 * @param re	Real parts, at least n values.
+	 * @param im	Imaginary parts, at least n values.
+	 */
+	public void transform(double[] re, double[] im) {
+		if (convolution == null)
+			radix2(re, im);
+		else
+			bluestein(re, im);
+	}
+
+	/**
+	 * Inverse transform in place, including the division by n.
+	 */
+	public void inverse(double[] re, double[] im) {
+		//the inverse is the conjugate of the transform of the conjugate
+		for (int k = 0; k < n; k++)
+			im[k] = -im[k];
+		transform(re, im);
+		double scale = 1.0 / n;
+		for (int k = 0; k < n; k++) {
+			re[k] *= scale;
+			im[k] *= -scale;
+		}
+	}
+
+	private void radix2(double[] re, double[] im) {
+		for (int k = 0; k < n; k++) {
+			int r = reversed[k];
+			if (r > k) {
+				double t = re[k]; re[k] = re[r]; re[r] = t;
+				t = im[k]; im[k] = im[r]; im[r] = t;
+			}
+		}
+		for (int size = 2; size <= n; size <<= 1) {
+			int half = size >> 1;
+			int step = n / size;
+			for (int start = 0; start < n; start += size) {
+				for (int k = 0; k < half; k++) {
+					double wr = cos[k * step];
+					double wi = sin[k * step];
+					int a = start + k;
+					int b = a + half;
+					double tr = wr * re[b] - wi * im[b];
+					double ti = wr * im[b] + wi * re[b];
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+
+	private void bluestein(double[] re, double[] im) {
+		int m = workRe.length;
+		for (int k = 0; k < n; k++) {
+			workRe[k] = re[k] * chirpRe[k] - im[k] * chirpIm[k];
+			workIm[k] = re[k] * chirpIm[k] + im[k] * chirpRe[k];
+		}
+		for (int k = n; k < m; k++) {
+			workRe[k] = 0;
+			workIm[k] = 0;
+		}
+		convolution.transform(workRe, workIm);
+		for (int k = 0; k < m; k++) {
+			double r = workRe[k] * filterRe[k] - workIm[k] * filterIm[k];
+			double i = workRe[k] * filterIm[k] + workIm[k] * filterRe[k];
+			workRe[k] = r;
+			workIm[k] = i;
+		}
+		convolution.inverse(workRe, workIm);
+		for (int k = 0; k < n; k++) {
+			re[k] = workRe[k] * chirpRe[k] - workIm[k] * chirpIm[k];
+			im[k] = workRe[k] * chirpIm[k] + workIm[k] * chirpRe[k];
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com;
+
+/**
+ * @author Marius
+ *
+ * The smallest and largest temperature of a field and its energy, the sum of the temperatures inside
+ * the bound. NumericalSolution calculates them in the same sweep as the time step (see
+ * NumericalSolution.setReductions(...)) and they are handed on with every Frame, so the renderer and
+ * the metrics never have to look at the whole field again.
+ *
+ * The min and max include the bound. The energy depends on the order of the sum, so it can differ in
+ * the last digits between different amounts of threads.
+ */
+public class FieldStats {
+
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+	private double energy = Double.NaN;
+
+	public void set(double min, double max, double energy) {
+		this.min = min;
+		this.max = max;
+		this.energy = energy;
+	}
+
+	public void copyFrom(FieldStats stats) {
+		set(stats.min, stats.max, stats.energy);
+	}
+
+	/**
+	 * Calculate the stats of a field with a separate pass, for the modes whose kernels do not reduce.
+	 * @param data		Flat row-major temperatures including the bound.
+	 */
+	public void scan(double[] data, int rows, int cols) {
+		double lowest = Double.POSITIVE_INFINITY;
+		double highest = Double.NEGATIVE_INFINITY;
+		for (int pos = 0; pos < rows * cols; pos++) {
+			if (data[pos] < lowest) lowest = data[pos];
+			if (data[pos] > highest) highest = data[pos];
+		}
+		double sum = 0;
+		for (int i = 1; i < rows - 1; i++) {
+			double rowSum = 0;
+			for (int pos = i * cols + 1; pos < i * cols + cols - 1; pos++)
+				rowSum += data[pos];
+			sum += rowSum;
+		}
+		set(lowest, highest, sum);
+	}
+
+	/**
+	 * NaN until the stats are set.
+	 */
+	public double getMin() { return min; }
+	public double getMax() { return max; }
+	public double getEnergy() { return energy; }
+
+	@Override
+	public String toString() {
+		return String.format("min: %.3f, max: %.3f, energy: %.6g", min, max, energy);
+	}
+}
@@ -0,0 +1,171 @@
+package com;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * The explicit scheme of NumericalSolution in DOUBLE_BUFFER mode, but with the temperatures stored as
+ * float[]. Both buffers together take as much memory as one buffer of NumericalSolution, and every time
+ * step moves half as many bytes, which is where the stencil spends its time on large meshes.
+ *
+ * The precision decides how a time step is calculated (see FloatStencilKernel):
+ * 		- SINGLE:	Everything in float.
+ * 		- MIXED:	float storage, the stencil and the update in double.
+ * The reductions over the grid (getEnergy(), getMax()) are always done in double, a float sum over a
+ * large mesh loses several digits.
+ *
+ * float has about 7 significant digits, so the temperatures drift away from the double solution with
+ * the amount of time steps. MIXED only removes the rounding inside the stencil, the new temperature is
+ * still rounded to float every time step. That rounding dominates after a few thousand time steps, and
+ * from there on MIXED is not more accurate than SINGLE, while it is slower because of the conversions.
+ * PrecisionReport prints the difference and the speed of both. The result does not depend on the amount
+ * of threads.
+ */
+public class FloatSolution {
+
+	public enum Precision { SINGLE, MIXED }
+
+	private final int rows;
+	private final int cols;
+
+	private final double alpha;
+
+	private final Precision precision;
+
+	/**
+	 * Current temperatures and the buffer the next ones are written to, swapped every time step.
+	 */
+	private float[] field;
+	private float[] back;
+
+	/**
+	 * Splits the stencil between several threads. Null when running on a single thread.
+	 */
+	private ParallelStepper stepper;
+
+	/**
+	 * Time step of the current call, read by the bands.
+	 */
+	private double deltaTime;
+
+	private final ParallelStepper.BandTask band = this::stepRows;
+
+	/**
+	 * Three double rows per thread for the MIXED kernel.
+	 */
+	private final ThreadLocal<double[]> windows;
+
+	public FloatSolution(SimpleMatrix matrix, double alpha) {
+		this(matrix, alpha, Precision.SINGLE, 1);
+	}
+
+	public FloatSolution(SimpleMatrix matrix, double alpha, Precision precision) {
+		this(matrix, alpha, precision, 1);
+	}
+
+	/**
+	 * @param matrix	Initial temperatures, including the bound. Rounded to float, not changed.
+	 * @param alpha		Thermal diffusivity constant.
+	 * @param precision	How the time steps are calculated.
+	 * @param threads	Amount of threads.
+	 */
+	public FloatSolution(SimpleMatrix matrix, double alpha, Precision precision, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Amount of threads must be at least 1!");
+		rows = matrix.getNumRows();
+		cols = matrix.getNumCols();
+		this.alpha = alpha;
+		this.precision = precision;
+		field = new float[rows * cols];
+		double[] data = matrix.getDDRM().getData();
+		for (int pos = 0; pos < field.length; pos++)
+			field[pos] = (float) data[pos];
+		//the bound is never written, so both buffers need it
+		back = field.clone();
+		windows = ThreadLocal.withInitial(() -> new double[3 * cols]);
+		if (threads > 1)
+			stepper = new ParallelStepper(threads, rows);
+	}
+
+	/**
+	 * One time step.
+	 * @param deltaTime		Time step in seconds.
+	 */
+	public void step(double deltaTime) {
+		this.deltaTime = deltaTime;
+		if (stepper != null)
+			stepper.forEachBand(band);
+		else
+			stepRows(1, rows - 1);
+		float[] tmp = field;
+		field = back;
+		back = tmp;
+	}
+
+	/**
+	 * Several time steps, the same as calling step(deltaTime) steps times.
+	 */
+	public void advance(long steps, double deltaTime) {
+		for (long n = 0; n < steps; n++)
+			step(deltaTime);
+	}
+
+	private void stepRows(int rowStart, int rowEnd) {
+		if (precision == Precision.SINGLE)
+			FloatStencilKernel.single(field, back, cols, alpha, deltaTime, rowStart, rowEnd);
+		else
+			FloatStencilKernel.mixed(field, back, cols, alpha, deltaTime, rowStart, rowEnd, windows.get());
+	}
+
+	/**
+	 * The current temperatures as a new double matrix, e.g. to compare them with NumericalSolution.
+	 */
+	public SimpleMatrix getSolution() {
+		SimpleMatrix matrix = new SimpleMatrix(rows, cols);
+		double[] data = matrix.getDDRM().getData();
+		for (int pos = 0; pos < field.length; pos++)
+			data[pos] = field[pos];
+		return matrix;
+	}
+
+	/**
+	 * Flat row-major view of the current temperatures. Replaced by the other buffer every time step.
+	 */
+	public float[] getField() {
+		return field;
+	}
+
+	/**
+	 * Sum of all the temperatures, accumulated in double.
+	 */
+	public double getEnergy() {
+		double sum = 0;
+		for (float value : field)
+			sum += value;
+		return sum;
+	}
+
+	/**
+	 * Highest temperature, compared in double.
+	 */
+	public double getMax() {
+		double max = Double.NEGATIVE_INFINITY;
+		for (float value : field)
+			max = Math.max(max, value);
+		return max;
+	}
+
+	public int getRows() { return rows; }
+	public int getCols() { return cols; }
+	public double getAlpha() { return alpha; }
+	public Precision getPrecision() { return precision; }
+
+	/**
+	 * Stops the threads, if any. The solution can not be advanced afterwards.
+	 */
+	public void shutdown() {
+		if (stepper != null)
+			stepper.shutdown();
+	}
+}
@@ -0,0 +1,78 @@
+package com;
+
+/**
+ * @author Marius
+ *
+ * StencilKernel.step(...) for temperatures stored as float[], see FloatSolution. Same layout and
+ * same order of operations as the double kernel, only the precision differs:
+ * 		- single(...):	Everything in float. Half the memory traffic of the double kernel, and twice as
+ * 						many values per SIMD register when the JIT vectorizes the loop.
+ * 		- mixed(...):	The temperatures are stored as float, but the stencil and the update are calculated
+ * 						in double and only the new temperature is rounded to float. One rounding per value
+ * 						and time step instead of one per operation.
+ *
+ * Converting every neighbour from float to double in the stencil is slow (five conversions per value that
+ * the JIT does not vectorize), so mixed(...) converts every row once into a window of three double rows
+ * and runs the double stencil on the window.
+ *
+ * Both kernels flush new temperatures smaller than Float.MIN_NORMAL (about 1e-38) to 0. The hot areas
+ * spread a front of ever smaller temperatures over the cold ones, and in float these soon become
+ * subnormal numbers, which the CPU calculates many times slower: without the flush a 1024x1024 mesh
+ * ran about 5 times slower after a few hundred time steps. double only gets there after about
+ * 8 times as many time steps.
+ */
+public final class FloatStencilKernel {
+
+	private FloatStencilKernel() {}
+
+	/**
+	 * One time step for the rows rowStart (inclusive) to rowEnd (exclusive) in single precision.
+	 * The bound of next is left untouched.
+	 */
+	public static void single(float[] u, float[] next, int cols, double alpha, double deltaTime, int rowStart, int rowEnd) {
+		final float c = (float) Math.pow(alpha, 2);
+		final float center = (float) (-4 * Math.pow(alpha, 2));
+		final float scalar = (float) (deltaTime * deltaTime);
+		for (int i = rowStart; i < rowEnd; i++) {
+			int pos = i * cols + 1;
+			int end = i * cols + cols - 1;
+			for (; pos < end; pos++) {
+				float val = c * u[pos - cols] + c * u[pos - 1] + center * u[pos] + c * u[pos + 1] + c * u[pos + cols];
+				float value = u[pos] + val * scalar;
+				next[pos] = Math.abs(value) < Float.MIN_NORMAL ? 0 : value;
+			}
+		}
+	}
+
+	/**
+	 * Same as single(...), but calculated in double.
+	 * @param window	Scratch buffer of at least 3 * cols values, holds the rows i-1, i and i+1.
+	 */
+	public static void mixed(float[] u, float[] next, int cols, double alpha, double deltaTime, int rowStart, int rowEnd, double[] window) {
+		final double c = Math.pow(alpha, 2);
+		final double center = -4 * Math.pow(alpha, 2);
+		final double scalar = deltaTime * deltaTime;
+		//row k is at (k % 3) * cols in the window
+		load(u, window, cols, rowStart - 1);
+		load(u, window, cols, rowStart);
+		for (int i = rowStart; i < rowEnd; i++) {
+			load(u, window, cols, i + 1);
+			int up = ((i - 1) % 3) * cols;
+			int mid = (i % 3) * cols;
+			int down = ((i + 1) % 3) * cols;
+			int out = i * cols;
+			for (int j = 1; j < cols - 1; j++) {
+				double val = c * window[up + j] + c * window[mid + j - 1] + center * window[mid + j] + c * window[mid + j + 1] + c * window[down + j];
+				float value = (float) (window[mid + j] + val * scalar);
+				next[out + j] = Math.abs(value) < Float.MIN_NORMAL ? 0 : value;
+			}
+		}
+	}
+
+	private static void load(float[] u, double[] window, int cols, int row) {
+		int offset = (row % 3) * cols;
+		int start = row * cols;
+		for (int j = 0; j < cols; j++)
+			window[offset + j] = u[start + j];
+	}
+}
@@ -0,0 +1,58 @@
+package com;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * A snapshot of the temperatures at a given time step, together with their FieldStats. Frames are handed from the simulation to
+ * the renderer through a FrameExchange and are reused, so they are only valid until they are
+ * handed back to the exchange.
+ */
+public class Frame {
+
+	/**
+	 * Flat row-major temperatures, see StencilKernel.
+	 */
+	private final double[] data;
+
+	private final int rows;
+	private final int cols;
+
+	private final FieldStats stats = new FieldStats();
+
+	private long step;
+	private double time;
+
+	public Frame(int rows, int cols) {
+		this.rows = rows;
+		this.cols = cols;
+		data = new double[rows * cols];
+		//the stats of the zeros, in case the frame is drawn before anything is published
+		stats.set(0, 0, 0);
+	}
+
+	/**
+	 * Copy the temperatures of matrix and their stats into this frame.
+	 * @param matrix	Temperatures, must have the same size as the frame.
+	 * @param stats		Stats of the temperatures, see NumericalSolution.getStats(). null leaves them NaN.
+	 * @param step		Amount of time steps taken.
+	 * @param time		Simulated time in seconds.
+	 */
+	public void copyFrom(SimpleMatrix matrix, FieldStats stats, long step, double time) {
+		System.arraycopy(matrix.getDDRM().getData(), 0, data, 0, data.length);
+		if (stats != null)
+			this.stats.copyFrom(stats);
+		else
+			this.stats.set(Double.NaN, Double.NaN, Double.NaN);
+		this.step = step;
+		this.time = time;
+	}
+
+	public double[] getData() { return data; }
+	public FieldStats getStats() { return stats; }
+	public int getRows() { return rows; }
+	public int getCols() { return cols; }
+	public long getStep() { return step; }
+	public double getTime() { return time; }
+}
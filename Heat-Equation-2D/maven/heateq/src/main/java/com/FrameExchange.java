@@ -0,0 +1,87 @@
+package com;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Marius
+ *
+ * Lock-free triple buffer that hands frames from one producer (the simulation) to one consumer
+ * (the renderer). Neither side ever waits for the other:
+ * 		- The producer always owns one frame it can write to (back).
+ * 		- The consumer always owns one frame it can read from (front).
+ * 		- The third frame is the latest published frame, it is swapped with back on publish and
+ * 		  with front when the consumer asks for a new frame.
+ *
+ * The index of the middle frame and a flag telling if it is newer than front are kept in a
+ * single AtomicInteger, so every hand-off is one atomic swap.
+ */
+public class FrameExchange {
+
+	/**
+	 * Set in state when the middle frame has not been picked up by the consumer yet.
+	 */
+	private static final int FRESH = 4;
+
+	private static final int INDEX_MASK = 3;
+
+	private final Frame[] frames = new Frame[3];
+
+	private final AtomicInteger state = new AtomicInteger(1);
+
+	/**
+	 * Only touched by the producer.
+	 */
+	private int back = 0;
+
+	/**
+	 * Only touched by the consumer.
+	 */
+	private int front = 2;
+
+	/**
+	 * Frames that were replaced by a newer frame before the consumer picked them up.
+	 * Only written by the producer.
+	 */
+	private volatile long dropped = 0;
+
+	public FrameExchange(int rows, int cols) {
+		for (int n = 0; n < frames.length; n++)
+			frames[n] = new Frame(rows, cols);
+	}
+
+	/**
+	 * The frame the producer writes the next snapshot into. Only called by the producer.
+	 */
+	public Frame back() {
+		return frames[back];
+	}
+
+	/**
+	 * Make the back frame the latest frame. Only called by the producer.
+	 */
+	public void publish() {
+		int previous = state.getAndSet(back | FRESH);
+		back = previous & INDEX_MASK;
+		if ((previous & FRESH) != 0)
+			dropped++;
+	}
+
+	/**
+	 * The latest published frame. If nothing new has been published since the last call the same
+	 * frame is returned again. Only called by the consumer.
+	 */
+	public Frame latest() {
+		if ((state.get() & FRESH) != 0) {
+			int previous = state.getAndSet(front);
+			front = previous & INDEX_MASK;
+		}
+		return frames[front];
+	}
+
+	/**
+	 * Amount of published frames the consumer never got, because a newer frame was published first.
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+}
@@ -0,0 +1,97 @@
+package com;
+
+/**
+ * @author Marius
+ *
+ * Turns temperatures into grayscale pixels.
+ *
+ * In order to make better use of the 0 to 255 grayscale values we do two things.
+ * First we scale all the values between 0 and 400. We use 400 because this allows
+ * for using the whole range of 0 to 255 a bit longer than starting at 255.
+ * Thereafter, we calculate the percentage of the current brightest pixel
+ * to the overall brighest pixel seen at the start of the simulation. Over time,
+ * will get less bright, thus the percentage smaller. This ensures that all pixels
+ * the brighest pixel given an iteratinon eventually reach 0, because
+ * without the percentage, when scaling the pixels between
+ * 0 and 255, there would always be a pixel with the value 255.
+ */
+public class GrayscaleMapping {
+
+	/**
+	 * RGB value for every gray level 0 to 255, so that no Color has to be created per pixel.
+	 */
+	private static final int[] PALETTE = new int[256];
+
+	static {
+		for (int level = 0; level < 256; level++)
+			PALETTE[level] = (level << 16) | (level << 8) | level;
+	}
+
+	private boolean first = true;
+	private double MAXIM;
+
+	/**
+	 * Scaler and percentage of the current frame.
+	 */
+	private double scaler;
+	private double percentage;
+
+	/**
+	 * RGB pixel of every temperature in field.
+	 * @param field		Flat row-major temperatures.
+	 * @param rows		Amount of rows in field.
+	 * @param cols		Amount of columns in field.
+	 * @param maxim		Highest temperature in field (assumed to be positive).
+	 * @param pixels	Output, flat row-major pixels. The rows are flipped, i.e. the first row
+	 * 					of field is the last row of pixels, since the first row is drawn at the bottom.
+	 */
+	public void toPixels(double[] field, int rows, int cols, double maxim, int[] pixels) {
+		prepare(maxim);
+		for (int i = 0; i < rows; i++) {
+			int src = i * cols;
+			int dst = (rows - 1 - i) * cols;
+			for (int j = 0; j < cols; j++)
+				pixels[dst + j] = PALETTE[level(field[src + j])];
+		}
+	}
+
+	/**
+	 * Gray level 0 to 255 of every temperature in field, e.g. for a TYPE_BYTE_GRAY image.
+	 * Same as toPixels(...) but with one byte per pixel.
+	 * @param gray		Output, flat row-major gray levels with the rows flipped.
+	 */
+	public void toGray(double[] field, int rows, int cols, double maxim, byte[] gray) {
+		prepare(maxim);
+		for (int i = 0; i < rows; i++) {
+			int src = i * cols;
+			int dst = (rows - 1 - i) * cols;
+			for (int j = 0; j < cols; j++)
+				gray[dst + j] = (byte) level(field[src + j]);
+		}
+	}
+
+	private void prepare(double maxim) {
+		// If it is the first numerical solution, store the highest value temperature
+		if (first) {
+			MAXIM = maxim;
+			first = false;
+		}
+		// Calculate the percentage of the current highest temperature to the overall highest seen
+		percentage = maxim / MAXIM;
+		// Scale every temperature between 0 and 400 for better visualization
+		scaler = 400 / maxim;
+	}
+
+	private int level(double val) {
+		// Scale value between 0 and 400
+		val *= scaler;
+		// Dim the pixel value depending on the brightest pixel
+		val *= percentage;
+		// Cast into integer
+		int integerVal = (int) val;
+		//clamp values between 0 and 255 just in case some values are outside
+		if 		(integerVal > 255) integerVal = 255;
+		else if (integerVal < 0) 	integerVal = 0;
+		return integerVal;
+	}
+}
@@ -0,0 +1,164 @@
+package com;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Marius
+ *
+ * TCP connection to the process owning the neighboring part of the mesh, see HaloWorker. Every time step
+ * one row (the halo) is sent and one row is received in each direction.
+ *
+ * Sending and receiving run on their own threads, so the rows travel while the calculating thread updates
+ * the inside of its part of the mesh. Rows are copied into direct buffers which are reused: two for
+ * sending and two for receiving, so the receiving thread can be one time step ahead.
+ */
+public class HaloLink implements AutoCloseable {
+
+	private static final int BUFFERS = 2;
+
+	private final SocketChannel channel;
+
+	private final int cols;
+
+	private final BlockingQueue<ByteBuffer> freeSend = new ArrayBlockingQueue<>(BUFFERS);
+	private final BlockingQueue<ByteBuffer> toSend = new ArrayBlockingQueue<>(BUFFERS);
+	private final BlockingQueue<ByteBuffer> freeReceive = new ArrayBlockingQueue<>(BUFFERS);
+	private final BlockingQueue<ByteBuffer> received = new ArrayBlockingQueue<>(BUFFERS);
+
+	private final Thread sender;
+	private final Thread receiver;
+
+	private volatile IOException error;
+
+	/**
+	 * Put in toSend to stop the sending thread.
+	 */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	/**
+	 * @param channel	Connected socket to the neighbor.
+	 * @param cols		Amount of values in a row.
+	 * @param name		Name of the neighbor, used for the names of the threads.
+	 */
+	public HaloLink(SocketChannel channel, int cols, String name) throws IOException {
+		this.channel = channel;
+		this.cols = cols;
+		channel.socket().setTcpNoDelay(true);
+		for (int i = 0; i < BUFFERS; i++) {
+			freeSend.add(ByteBuffer.allocateDirect(cols * Double.BYTES).order(ByteOrder.nativeOrder()));
+			freeReceive.add(ByteBuffer.allocateDirect(cols * Double.BYTES).order(ByteOrder.nativeOrder()));
+		}
+		sender = new Thread(this::sendRows, "Halo sender " + name);
+		receiver = new Thread(this::receiveRows, "Halo receiver " + name);
+		sender.setDaemon(true);
+		receiver.setDaemon(true);
+		sender.start();
+		receiver.start();
+	}
+
+	/**
+	 * Send the row starting at u[offset] in the background.
+	 */
+	public void send(double[] u, int offset) throws IOException {
+		ByteBuffer buffer = take(freeSend);
+		//the view does not move the position of the buffer, which thus covers the whole row
+		buffer.clear();
+		buffer.asDoubleBuffer().put(u, offset, cols);
+		toSend.add(buffer);
+	}
+
+	/**
+	 * Wait for the next row from the neighbor and copy it to u[offset].
+	 */
+	public void receive(double[] u, int offset) throws IOException {
+		ByteBuffer buffer = take(received);
+		buffer.flip();
+		buffer.asDoubleBuffer().get(u, offset, cols);
+		freeReceive.add(buffer);
+	}
+
+	/**
+	 * Wait until all rows are sent and close the connection.
+	 */
+	@Override
+	public void close() throws IOException {
+		toSend.add(END);
+		try {
+			sender.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		receiver.interrupt();
+		channel.close();
+		if (error != null)
+			throw error;
+	}
+
+	private void sendRows() {
+		try {
+			while (true) {
+				ByteBuffer buffer = toSend.take();
+				if (buffer == END)
+					return;
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+				freeSend.add(buffer);
+			}
+		}
+		catch (IOException e) {
+			error = e;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void receiveRows() {
+		try {
+			while (true) {
+				ByteBuffer buffer = freeReceive.take();
+				buffer.clear();
+				while (buffer.hasRemaining())
+					if (channel.read(buffer) < 0)
+						return;
+				received.add(buffer);
+			}
+		}
+		catch (IOException e) {
+			//closing the channel while reading also ends up here
+			if (channel.isOpen())
+				error = e;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Take a buffer from the queue, failing instead of waiting forever if the connection broke.
+	 */
+	private ByteBuffer take(BlockingQueue<ByteBuffer> queue) throws IOException {
+		try {
+			while (true) {
+				ByteBuffer buffer = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (buffer != null)
+					return buffer;
+				if (error != null)
+					throw error;
+				if (queue == received && !receiver.isAlive() && queue.isEmpty())
+					throw new IOException("Connection to the neighbor was closed!");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the neighbor", e);
+		}
+	}
+}
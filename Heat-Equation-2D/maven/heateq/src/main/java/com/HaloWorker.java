@@ -0,0 +1,145 @@
+package com;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * @author Marius
+ *
+ * One process of a distributed run, see DistributedHeat. The process owns a strip of rows of the mesh and
+ * keeps one extra row above and below it: either the fixed bound of the mesh or a copy (halo) of the last
+ * row of the neighboring strip, which is received every time step through a HaloLink.
+ *
+ * A time step first sends the first and last owned row to the neighbors, then updates the rows that do not
+ * need the halos while the rows are on their way, and finally waits for the halos and updates the first
+ * and last owned row. Every pixel is calculated by StencilKernel.step(...), so the result is exactly the
+ * same as in a single process.
+ *
+ * Usage (started by DistributedHeat):
+ * 		HaloWorker checkpoint rank processes start end steps deltaTime part port0,port1,...
+ * The process owns the rows start to end (exclusive). The initial temperatures are read from the checkpoint,
+ * the owned rows are written to part as doubles after the time in seconds the time steps took.
+ */
+public class HaloWorker {
+
+	/**
+	 * How long to keep trying to connect to a neighbor that has not started listening yet, and how long
+	 * to wait for the neighbor above to connect.
+	 */
+	private static final long CONNECT_TIMEOUT = 30_000_000_000L;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 9) {
+			System.err.println("Usage: HaloWorker checkpoint rank processes start end steps deltaTime part port0,port1,...");
+			System.exit(1);
+		}
+		Path checkpoint = Paths.get(args[0]);
+		int rank = Integer.parseInt(args[1]);
+		int processes = Integer.parseInt(args[2]);
+		int start = Integer.parseInt(args[3]);
+		int end = Integer.parseInt(args[4]);
+		long steps = Long.parseLong(args[5]);
+		double deltaTime = Double.parseDouble(args[6]);
+		Path part = Paths.get(args[7]);
+		String[] ports = args[8].split(",");
+		//the owned rows and one row above and below
+		Checkpoint strip = Checkpoint.read(checkpoint, start - 1, end + 1);
+		int cols = strip.getField().getNumCols();
+		double alpha = strip.getAlpha();
+		double[] u = strip.getField().getDDRM().getData();
+		double[] next = u.clone();
+		int n = end - start;
+
+		HaloLink up = null;
+		HaloLink down = null;
+		try (ServerSocketChannel server = ServerSocketChannel.open()) {
+			//listen before connecting, so the neighbor above can connect as soon as possible
+			if (rank > 0)
+				server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(ports[rank])));
+			if (rank < processes - 1)
+				down = new HaloLink(connect(Integer.parseInt(ports[rank + 1])), cols, "down");
+			if (rank > 0)
+				up = new HaloLink(accept(server), cols, "up");
+		}
+
+		long begin = System.nanoTime();
+		for (long s = 0; s < steps; s++) {
+			if (up != null) up.send(u, cols);
+			if (down != null) down.send(u, n * cols);
+			//rows that only need owned rows, overlapping the halo exchange
+			StencilKernel.step(u, next, cols, alpha, deltaTime, 2, n);
+			if (up != null) up.receive(u, 0);
+			if (down != null) down.receive(u, (n + 1) * cols);
+			StencilKernel.step(u, next, cols, alpha, deltaTime, 1, 2);
+			if (n > 1)
+				StencilKernel.step(u, next, cols, alpha, deltaTime, n, n + 1);
+			double[] tmp = u;
+			u = next;
+			next = tmp;
+		}
+		double wallTime = (System.nanoTime() - begin) / 1e9;
+		if (up != null) up.close();
+		if (down != null) down.close();
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(part), 1 << 16))) {
+			out.writeDouble(wallTime);
+			for (int pos = cols; pos < (n + 1) * cols; pos++)
+				out.writeDouble(u[pos]);
+		}
+	}
+
+	/**
+	 * Wait for the neighbor above to connect, failing if it does not within CONNECT_TIMEOUT (e.g. it
+	 * could not start) instead of waiting forever.
+	 */
+	private static SocketChannel accept(ServerSocketChannel server) throws IOException {
+		long deadline = System.nanoTime() + CONNECT_TIMEOUT;
+		server.configureBlocking(false);
+		while (true) {
+			SocketChannel channel = server.accept();
+			if (channel != null) {
+				channel.configureBlocking(true);
+				return channel;
+			}
+			if (System.nanoTime() > deadline)
+				throw new SocketTimeoutException("The neighbor above did not connect!");
+			try {
+				Thread.sleep(10);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the neighbor above", e);
+			}
+		}
+	}
+
+	private static SocketChannel connect(int port) throws IOException {
+		long deadline = System.nanoTime() + CONNECT_TIMEOUT;
+		while (true) {
+			try {
+				return SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+			}
+			catch (ConnectException e) {
+				if (System.nanoTime() > deadline)
+					throw e;
+				try {
+					Thread.sleep(10);
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,495 @@
+package com;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * Command line entry point that runs the simulation without a window, see BatchRunner.
+ *
+ * Example:
+ * 		java -cp heateq.jar com.HeadlessHeat --mesh 500x500 --alpha 5 --dt 0.1 --steps 1000
+ * 			--point 0,25,240 --point 25,0,80 --point 49,49,192 --out field.csv
+ * 		java -cp heateq.jar com.HeadlessHeat --resume run.chk --steps 1000 --checkpoint run.chk
+ * 		java -cp heateq.jar com.HeadlessHeat --mesh 50000x50000 --point 0,0,100 --mapped big.heqm --checkpoint-every 100
+ * 		java -cp heateq.jar com.HeadlessHeat --resume big.heqm --steps 1000
+ * 		java -cp heateq.jar com.HeadlessHeat --mesh 4000x4000 --point 0,0,100 --precision single --threads 4
+ */
+public class HeadlessHeat {
+
+	/**
+	 * Amount of snapshots that can wait to be written before they are dropped (or, with --export-wait,
+	 * the run waits for the disk).
+	 */
+	private static final int EXPORT_QUEUE = 8;
+
+	/**
+	 * Relative residual and most cycles of the multigrid solve for --steady.
+	 */
+	private static final double STEADY_TOLERANCE = 1e-10;
+	private static final int STEADY_CYCLES = 100;
+
+	/**
+	 * How the temperatures are stored and calculated: DOUBLE in a NumericalSolution, SINGLE and MIXED in a
+	 * FloatSolution of the same precision.
+	 */
+	private enum Precision { DOUBLE, SINGLE, MIXED }
+
+	private static final String USAGE = String.join("\n",
+			"Usage: HeadlessHeat [options] --point x,y,z [--point x,y,z ...]",
+			"  --mesh XxY             mesh size (default 50x50)",
+			"  --alpha A              thermal diffusivity constant (default 5)",
+			"  --dt DT                time step in seconds (default 0.1)",
+			"  --steps N              amount of time steps (default 100)",
+			"  --time T               simulated time in seconds, replaces --steps",
+			"  --mode MODE            MATRIX, STENCIL, DOUBLE_BUFFER, VECTOR, TILED or SPARSE (default DOUBLE_BUFFER)",
+			"  --threads N            amount of threads (default 1)",
+			"  --precision P          DOUBLE, SINGLE or MIXED. SINGLE and MIXED store the temperatures as float and",
+			"                         step them like DOUBLE_BUFFER with half the memory, MIXED calculates the",
+			"                         stencil in double (default DOUBLE)",
+			"  --snapshot-every N     write a snapshot every N time steps (default 0, no snapshots)",
+			"  --snapshot-dir DIR     directory for snapshots (default snapshots)",
+			"  --out FILE             file for the final temperatures (default: not written)",
+			"  --checkpoint FILE      write checkpoints to FILE, at least at the end of the run",
+			"  --checkpoint-every N   write a checkpoint every N time steps (default 0, only at the end)",
+			"  --compress             compress the checkpoints",
+			"  --export DIR           stream snapshots to DIR in the background",
+			"  --export-every N       stream a snapshot every N time steps (default 1)",
+			"  --export-format F      RAW_F64, RAW_F32, DELTA, QUANTIZED, PNG or GIF (default RAW_F64)",
+			"  --export-wait          wait for the disk instead of dropping snapshots when it is behind. Every",
+			"                         snapshot is written, but the time steps are slowed down to the disk",
+			"  --resume FILE          continue from a checkpoint or a --mapped file, the mesh, alpha and points are",
+			"                         taken from it and --time is the total simulated time",
+			"  --mapped FILE          keep the temperatures in the memory-mapped FILE instead of on the heap, for",
+			"                         meshes larger than the heap. The file is the checkpoint, it is flushed every",
+			"                         --checkpoint-every steps and at the end",
+			"  --boundary B           edge conditions, DIRICHLET[:T], NEUMANN or PERIODIC for every edge, or",
+			"                         x=...,y=... per direction (default DIRICHLET:0)",
+			"  --steady               solve for the steady state with multigrid instead of taking time steps",
+			"  --spectral             jump over the time steps in one go with sine transforms (bound must be 0)",
+			"  --metrics S            print solver metrics every S seconds and register them with JMX");
+
+	public static void main(String[] args) {
+		int meshX = 50;
+		int meshY = 50;
+		double alpha = 5;
+		double deltaTime = 0.1;
+		long steps = 100;
+		double endTime = -1;
+		NumericalSolution.Mode mode = NumericalSolution.Mode.DOUBLE_BUFFER;
+		int threads = 1;
+		long snapshotEvery = 0;
+		Path snapshotDir = Paths.get("snapshots");
+		Path out = null;
+		Path checkpoint = null;
+		long checkpointEvery = 0;
+		boolean compress = false;
+		boolean steady = false;
+		boolean spectral = false;
+		Path resume = null;
+		Path export = null;
+		long exportEvery = 1;
+		boolean exportWait = false;
+		SnapshotWriter.Format exportFormat = SnapshotWriter.Format.RAW_F64;
+		double metricsEvery = 0;
+		Boundary boundary = null;
+		Path mapped = null;
+		boolean mappedRun = false;
+		Precision precision = Precision.DOUBLE;
+		List<Vertex> points = new ArrayList<>();
+		MappedField mappedField = null;
+		Checkpoint start = null;
+		FloatSolution floats = null;
+		NumericalSolution ns = null;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("--help")) {
+					System.out.println(USAGE);
+					return;
+				}
+				if (arg.equals("--compress")) {
+					compress = true;
+					continue;
+				}
+				if (arg.equals("--export-wait")) {
+					exportWait = true;
+					continue;
+				}
+				if (arg.equals("--steady")) {
+					steady = true;
+					continue;
+				}
+				if (arg.equals("--spectral")) {
+					spectral = true;
+					continue;
+				}
+				if (i + 1 >= args.length)
+					throw new IllegalArgumentException("Missing value for " + arg);
+				String value = args[++i];
+				switch (arg) {
+				case "--mesh":
+					String[] size = value.toLowerCase().split("x");
+					if (size.length != 2) throw new IllegalArgumentException("Mesh size must be on the form XxY");
+					meshX = Integer.parseInt(size[0]);
+					meshY = Integer.parseInt(size[1]);
+					break;
+				case "--alpha":				alpha = Double.parseDouble(value); break;
+				case "--dt":				deltaTime = Double.parseDouble(value); break;
+				case "--steps":				steps = Long.parseLong(value); break;
+				case "--time":				endTime = Double.parseDouble(value); break;
+				case "--mode":				mode = NumericalSolution.Mode.valueOf(value.toUpperCase()); break;
+				case "--threads":			threads = Integer.parseInt(value); break;
+				case "--precision":			precision = Precision.valueOf(value.toUpperCase()); break;
+				case "--snapshot-every":	snapshotEvery = Long.parseLong(value); break;
+				case "--snapshot-dir":		snapshotDir = Paths.get(value); break;
+				case "--out":				out = Paths.get(value); break;
+				case "--checkpoint":		checkpoint = Paths.get(value); break;
+				case "--checkpoint-every":	checkpointEvery = Long.parseLong(value); break;
+				case "--resume":			resume = Paths.get(value); break;
+				case "--export":			export = Paths.get(value); break;
+				case "--export-every":		exportEvery = Long.parseLong(value); break;
+				case "--export-format":		exportFormat = SnapshotWriter.Format.valueOf(value.toUpperCase()); break;
+				case "--metrics":			metricsEvery = Double.parseDouble(value); break;
+				case "--boundary":			boundary = parseBoundary(value); break;
+				case "--mapped":			mapped = Paths.get(value); break;
+				case "--point":
+					String[] xyz = value.split(",");
+					if (xyz.length != 3) throw new IllegalArgumentException("Point must be on the form x,y,z");
+					points.add(new Vertex(Double.parseDouble(xyz[0]), Double.parseDouble(xyz[1]), Double.parseDouble(xyz[2])));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+			if (points.isEmpty() && resume == null)
+				throw new IllegalArgumentException("At least one point is needed");
+			if ((steady || spectral) && boundary != null && !boundary.isZero())
+				throw new IllegalArgumentException("--steady and --spectral need the bound to be DIRICHLET:0");
+			if (mapped != null && resume != null)
+				throw new IllegalArgumentException("--resume continues a mapped file in place, it can not be combined with --mapped");
+			mappedRun = mapped != null || (resume != null && isMapped(resume));
+			if (mappedRun && (mode != NumericalSolution.Mode.DOUBLE_BUFFER || steady || spectral || export != null || snapshotEvery > 0
+					|| checkpoint != null || metricsEvery > 0 || boundary != null))
+				throw new IllegalArgumentException("Mapped runs do not support --mode, --steady, --spectral, --export, --snapshot-every, --checkpoint, --metrics or --boundary");
+			if (precision != Precision.DOUBLE && (mappedRun || mode != NumericalSolution.Mode.DOUBLE_BUFFER || steady || spectral
+					|| export != null || snapshotEvery > 0 || metricsEvery > 0 || boundary != null))
+				throw new IllegalArgumentException("--precision " + precision + " does not support --mapped, --mode, --steady, --spectral, --export, --snapshot-every, --metrics or --boundary");
+
+			//the solution is set up here as well, so that combinations it rejects (e.g. MATRIX on several threads)
+			//are reported like the other invalid options
+			if (mappedRun) {
+				if (resume != null) {
+					mappedField = MappedField.open(resume);
+					System.out.println("Resumed from " + resume + " at step " + mappedField.getStep() + ", time " + mappedField.getTime() + " s");
+				}
+				else {
+					mappedField = new HeatSimulation().setupMappedSimulation(points, alpha, meshX, meshY, mapped);
+				}
+				mappedField.setThreads(threads);
+			}
+			else {
+				if (resume != null) {
+					start = Checkpoint.read(resume);
+					System.out.println("Resumed from " + resume + " at step " + start.getStep() + ", time " + start.getTime() + " s");
+				}
+				if (precision != Precision.DOUBLE) {
+					FloatSolution.Precision floatPrecision = FloatSolution.Precision.valueOf(precision.name());
+					floats = start != null
+							? new FloatSolution(start.getField(), start.getAlpha(), floatPrecision, threads)
+							: new HeatSimulation().setupFloatSimulation(points, alpha, meshX, meshY, floatPrecision, threads);
+				}
+				else {
+					ns = start != null
+							? new NumericalSolution(start.getField(), start.getAlpha(), mode, threads)
+							: new HeatSimulation().setupSimulation(points, alpha, meshX, meshY, mode, threads);
+					if (boundary != null)
+						ns.setBoundary(boundary);
+				}
+			}
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+		catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+
+		if (mappedRun) {
+			mapped(mappedField, endTime >= 0 ? -1 : steps, endTime, deltaTime, checkpointEvery, out);
+			return;
+		}
+		if (floats != null) {
+			CheckpointWriter writer = checkpoint != null ? new CheckpointWriter(checkpoint, compress) : null;
+			floats(floats, start != null ? start.getTime() : 0, start != null ? start.getStep() : 0,
+					endTime >= 0 ? -1 : steps, endTime, deltaTime, writer, checkpointEvery, out);
+			return;
+		}
+
+		BatchRunner runner = start != null ? new BatchRunner(ns, start.getTime(), start.getStep()) : new BatchRunner(ns);
+		if (steady) {
+			steadyState(ns, out);
+			return;
+		}
+		if (spectral) {
+			double startTime = runner.getController().getTime();
+			long total = endTime >= 0 ? (long) Math.ceil((endTime - startTime) / deltaTime - 1e-9) : steps;
+			spectral(ns, Math.max(total, 0), deltaTime, out);
+			return;
+		}
+		CheckpointWriter writer = checkpoint != null ? new CheckpointWriter(checkpoint, compress) : null;
+		runner.setCheckpoints(writer, checkpointEvery);
+		SnapshotWriter exporter = null;
+		SolverMetrics metrics = null;
+		try {
+			if (export != null) {
+				SimpleMatrix field = ns.getSolution();
+				exporter = new SnapshotWriter(export, exportFormat, field.getNumRows(), field.getNumCols(), EXPORT_QUEUE);
+				runner.setExport(exporter, exportEvery, exportWait);
+			}
+			if (metricsEvery > 0) {
+				metrics = new SolverMetrics();
+				metrics.setSnapshots(exporter);
+				registerMetrics(metrics);
+				metrics.startLog(metricsEvery);
+				runner.setMetrics(metrics);
+			}
+			BatchRunner.Result result = endTime >= 0
+					? runner.runUntil(endTime, deltaTime, snapshotEvery, snapshotDir)
+					: runner.run(steps, deltaTime, snapshotEvery, snapshotDir);
+			System.out.println(result);
+			if (metrics != null) {
+				System.out.println(metrics.getSummary());
+				for (String line : metrics.getLatencies())
+					System.out.println("  " + line);
+			}
+			if (out != null)
+				BatchRunner.writeField(ns.getSolution(), out);
+			if (exporter != null) {
+				exporter.close();
+				System.out.println("snapshots written: " + exporter.getWritten() + ", dropped: " + exporter.getDropped());
+			}
+		}
+		catch (IOException | IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		finally {
+			ns.shutdown();
+			if (metrics != null)
+				metrics.close();
+			if (writer != null) {
+				try {
+					writer.close();
+					if (writer.getReplaced() > 0)
+						System.out.println("checkpoints replaced before they were written: " + writer.getReplaced());
+				}
+				catch (IOException e) {
+					System.err.println("Could not write checkpoint: " + e.getMessage());
+					System.exit(1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Run the simulation in a MappedField (--mapped), like BatchRunner does for a NumericalSolution. The
+	 * file is flushed every flushEvery time steps and closed at the end, which makes it a checkpoint.
+	 * @param steps		Amount of time steps, -1 to run until endTime.
+	 */
+	private static void mapped(MappedField field, long steps, double endTime, double deltaTime, long flushEvery, Path out) {
+		try {
+			if (!TimeStepController.isStable(field.getAlpha(), deltaTime))
+				throw new IllegalArgumentException("Time step " + deltaTime + " is unstable, the largest stable time step is "
+						+ TimeStepController.maxStableDeltaTime(field.getAlpha()));
+			if (steps < 0)
+				steps = Math.max(0, (long) Math.ceil((endTime - field.getTime()) / deltaTime - 1e-9));
+			long start = System.nanoTime();
+			for (long done = 0; done < steps; ) {
+				long count = steps - done;
+				if (flushEvery > 0)
+					count = Math.min(count, flushEvery - field.getStep() % flushEvery);
+				field.advance(count, deltaTime);
+				done += count;
+				if (flushEvery > 0 && field.getStep() % flushEvery == 0)
+					field.flush();
+			}
+			System.out.println(new BatchRunner.Result(steps, field.getTime(), (System.nanoTime() - start) / 1e9));
+			if (out != null)
+				BatchRunner.writeField(field, out);
+		}
+		catch (IOException | IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		finally {
+			try {
+				field.close();
+			}
+			catch (IOException e) {
+				System.err.println("Could not write the mapped file: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+	}
+
+	/**
+	 * Run the simulation in a FloatSolution (--precision SINGLE or MIXED), like BatchRunner does for a NumericalSolution.
+	 * Checkpoints are written in double, so a run can be resumed in either precision.
+	 * @param steps		Amount of time steps, -1 to run until endTime.
+	 * @param writer	Writes the checkpoints, null for none.
+	 */
+	private static void floats(FloatSolution solution, double time, long step, long steps, double endTime, double deltaTime,
+			CheckpointWriter writer, long checkpointEvery, Path out) {
+		try {
+			if (!TimeStepController.isStable(solution.getAlpha(), deltaTime))
+				throw new IllegalArgumentException("Time step " + deltaTime + " is unstable, the largest stable time step is "
+						+ TimeStepController.maxStableDeltaTime(solution.getAlpha()));
+			if (steps < 0)
+				steps = Math.max(0, (long) Math.ceil((endTime - time) / deltaTime - 1e-9));
+			long start = System.nanoTime();
+			for (long done = 0; done < steps; ) {
+				long count = steps - done;
+				if (writer != null && checkpointEvery > 0)
+					count = Math.min(count, checkpointEvery - step % checkpointEvery);
+				solution.advance(count, deltaTime);
+				done += count;
+				step += count;
+				time += deltaTime * count;
+				if (writer != null && (done == steps || (checkpointEvery > 0 && step % checkpointEvery == 0)))
+					writer.write(solution.getSolution(), solution.getAlpha(), time, step);
+			}
+			System.out.println(new BatchRunner.Result(steps, time, (System.nanoTime() - start) / 1e9));
+			if (out != null)
+				BatchRunner.writeField(solution.getSolution(), out);
+		}
+		catch (IOException | IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		finally {
+			solution.shutdown();
+			if (writer != null) {
+				try {
+					writer.close();
+				}
+				catch (IOException e) {
+					System.err.println("Could not write checkpoint: " + e.getMessage());
+					System.exit(1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * True if path is a MappedField file rather than a Checkpoint. Errors are left to the reader of the file.
+	 */
+	private static boolean isMapped(Path path) {
+		try {
+			return MappedField.isMappedField(path);
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Parse the value of --boundary, see USAGE.
+	 */
+	private static Boundary parseBoundary(String value) {
+		Boundary boundary = new Boundary();
+		for (String part : value.split(",")) {
+			String[] axis = part.split("=", 2);
+			String spec = axis[axis.length - 1];
+			String[] typeValue = spec.split(":", 2);
+			Boundary.Type type = Boundary.Type.valueOf(typeValue[0].toUpperCase());
+			double temperature = typeValue.length > 1 ? Double.parseDouble(typeValue[1]) : 0;
+			if (axis.length == 1) {
+				boundary.set(type, temperature);
+			}
+			else if (axis[0].equalsIgnoreCase("x")) {
+				boundary.set(Boundary.Edge.X_MIN, type, temperature);
+				boundary.set(Boundary.Edge.X_MAX, type, temperature);
+			}
+			else if (axis[0].equalsIgnoreCase("y")) {
+				boundary.set(Boundary.Edge.Y_MIN, type, temperature);
+				boundary.set(Boundary.Edge.Y_MAX, type, temperature);
+			}
+			else {
+				throw new IllegalArgumentException("Boundary direction must be x or y");
+			}
+		}
+		return boundary;
+	}
+
+	/**
+	 * Make the metrics visible in JConsole, a run without JMX still gets the log.
+	 */
+	private static void registerMetrics(SolverMetrics metrics) {
+		try {
+			metrics.register("HeadlessHeat");
+		}
+		catch (JMException e) {
+			System.err.println("Could not register the metrics with JMX: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Replace the temperatures with the ones after the given amount of time steps, computed in one go
+	 * by SpectralSolution, and write them to out.
+	 */
+	private static void spectral(NumericalSolution ns, long steps, double deltaTime, Path out) {
+		SimpleMatrix field = ns.getSolution();
+		ns.shutdown();
+		try {
+			long begin = System.nanoTime();
+			SpectralSolution solution = new SpectralSolution(field, ns.getAlpha());
+			solution.afterSteps(steps, deltaTime, field.getDDRM().getData());
+			double seconds = (System.nanoTime() - begin) / 1e9;
+			System.out.printf("spectral: %d steps of %s s in %.3f s, max %.4f%n", steps, deltaTime, seconds, field.elementMaxAbs());
+			if (out != null)
+				BatchRunner.writeField(field, out);
+		}
+		catch (IOException | IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Replace the temperatures with the steady state for their bound and write them to out.
+	 */
+	private static void steadyState(NumericalSolution ns, Path out) {
+		SimpleMatrix field = ns.getSolution();
+		Multigrid mg = new Multigrid(field.getNumRows(), field.getNumCols());
+		long begin = System.nanoTime();
+		int cycles = mg.steadyState(field.getDDRM().getData(), STEADY_TOLERANCE, STEADY_CYCLES);
+		double seconds = (System.nanoTime() - begin) / 1e9;
+		ns.shutdown();
+		System.out.printf("steady state: %d grids, %d cycles, %.3f s%n", mg.getLevels(), cycles, seconds);
+		double[] history = mg.getResidualHistory();
+		for (int k = 0; k < history.length; k++)
+			System.out.printf("  cycle %3d  residual %.3e%n", k, history[k]);
+		if (out != null) {
+			try {
+				BatchRunner.writeField(field, out);
+			}
+			catch (IOException e) {
+				System.err.println(e.getMessage());
+				System.exit(1);
+			}
+		}
+	}
+}
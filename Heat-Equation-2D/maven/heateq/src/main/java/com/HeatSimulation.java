@@ -1,173 +1,335 @@
-package com;
-
-import java.util.List;
-
-import org.ejml.simple.SimpleMatrix;
-
-/**
- * @author Marius
- * Simulate the heat equation in 2D. Given the input points, this class will
- * create a spline polynomial surface intersecting the points. This surface is used as the
- * initial value condition. The surface is then put into an object called NumericalSolution
- * which is returned to the user. Class NumericalSolution contains all the information about
- * the solution.
- * 
- * Assumptions that need to be satisfied:
- * 			- Boundary condition is 0.
- */
-public class HeatSimulation {
-		
-	/**
-	 * Given points are turned into a spline surface. This spline surface is then projected
-	 * onto a 2D mesh plane which contains the z-value.
-	 * 
-	 * Mesh explanation:
-	 * 		The mesh consist of size meshX by meshY. Note that the outer values, that is, the bound of 
-	 * 		the mesh is set to value 0. Values put in the mesh comes from the rectangle
-	 * 		ranging from origin to boundX in one direction and from origin to boundY in the
-	 * 		other direction.
-	 * 
-	 * 		Origin    ...     (boundX,0)
-	 * 		.                     .
-	 * 		.                     .
-	 * 		.                     .
-	 * 		(0,boundY) ... (boundX,boundY)
-	 * 
-	 * 		meshX and meshY are the amount of cells to create and deltaStep is the size of
-	 * 		the steps taken when extracting from the spline surface.
-	 * 
-	 * @param points	Used to create the spline surface.
-	 * @param alpha		Thermal diffusivity constant.	
-	 * @param meshX		Mesh size in x direction.
-	 * @param meshY		Mesh size in y direction.
-	 * @return			A NumericalSoulution that contains all the information about the solution
-	 * 					to the equation.
-	 */
-	public NumericalSolution setupSimulation(List<Vertex> points, double alpha, int meshX, int meshY) {
-		if (points.isEmpty())
-			throw new IllegalArgumentException("The list containing points is empty!");
-		
-		Polynomial poly = CreateSplineSurface(points);
-		System.out.println(poly);
-		//Project polynomial into a 2d mesh
-		double[][] data = new double[meshY][meshX];
-		double xPos = 0;
-		double yPos = 0;
-		for (int i = 0; i < meshY; i++) {
-			for (int j = 0; j < meshX; j++) {
-				//check if on the bound, set it fixed to zero.
-				if (i == 0 || i == meshY-1 || j == 0 || j == meshX-1) {
-					data[i][j] = 0;
-					xPos += 1;
-					continue;
-				}
-				//get polynomial value and put it into the mesh
-				double val = poly.getConstant();
-				//loop through xCoefficients for polynomial
-				for (int termIndex = 0; termIndex < poly.getXSize(); termIndex++) {
-					double coeff = poly.getNthCoefficient(termIndex, true);
-					val += coeff * Math.pow(xPos, termIndex + 1);
-				}
-				//loop through yCoefficients for polynomial
-				for (int termIndex = 0; termIndex < poly.getYSize(); termIndex++) {
-					double coeff = poly.getNthCoefficient(termIndex, false);
-					val += coeff * Math.pow(yPos, termIndex + 1);
-				}
-				
-				data[i][j] = val; 
-				
-				xPos += 1;
-			}
-			//start over again but this time with an increase in yPos
-			xPos = 0;
-			yPos += 1;
-		}
-		
-		SimpleMatrix matrix = new SimpleMatrix(data);
-		
-		return new NumericalSolution(matrix, alpha);
-	}
-
-	/**
-	 * Create a spline surface given the points. Can choose any
-	 * amount of points as long as there is at least one.
-	 * 
-	 * Note that this is a weaker implementation of a general spline surfare,
-	 * that is, it does not model the interaction between the x and y
-	 * varaibles. Non-linear relationships between x and y can thus
-	 * not be modeled (there are no terms on the form x^ay^b where a,b are positive integers).
-	 * The result is a potensial less accurate spline model in cases of non-linearity between x,y.
-	 * 
-	 * @param points	Points used to create the spline surface.
-	 * @return			Returns a polynomial that is the surface. 
-	 */
-	private Polynomial CreateSplineSurface(List<Vertex> points) {
-		Polynomial poly = new Polynomial(points.size());
-		//used for readability
-		int size = poly.getSize();
-		int xSize = poly.getXSize();
-		int ySize = poly.getYSize();
-		
-		/**
-		 * Start creating the equations for the system:
-		 *
-		 * For Loop Description:
-		 * -	First term is the constant value without any x or y.
-		 * -	Loop adding all the terms containing x added in increasing order.
-		 * -	Loop adding all the terms containing y added in increasing order.
-		 * 
-		 * Outer loop creates the equations.
-		 * Inner loop loops through the equation term wise.
-		 * 
-		 * The loop also creates the "b-vector" which contains all the values that
-		 * the polynomial are going to equal, i.e. this b vector: Ax = b. 
-		 */
-		//b vector
-		double[][] vectorData = new double[size][1];
-		//coefficient matrix A in Ax = b
-		double[][] matrixData = new double[size][size];
-		//Adding values to matrix and vector
-		for (int eqIndex = 0; eqIndex < size; eqIndex++) {
-			Vertex point = points.get(eqIndex);
-			vectorData[eqIndex][0] = point.getZ();
-			matrixData[eqIndex][0] = 1; //equal to 1 because of constant
-			//Add x terms to matrix
-			for (int termIndex = 0; termIndex < xSize; termIndex++) {
-				double xPos = point.getX();
-				double val = Math.pow(xPos, termIndex+1);
-				matrixData[eqIndex][termIndex+1] = val;
-			}
-			//add y terms to matrix
-			for (int termIndex = xSize+1; termIndex < size; termIndex++) {
-				double yPos = point.getY();
-				double val = Math.pow(yPos, termIndex - xSize);
-				matrixData[eqIndex][termIndex] = val;
-			}
-		}
-		//creating b vector
-		SimpleMatrix m = new SimpleMatrix(matrixData);
-		SimpleMatrix b = new SimpleMatrix(vectorData);
-		SimpleMatrix inverse = m.invert();
-		SimpleMatrix result = inverse.mult(b);
-		
-		//extract coefficients
-		double[] pCoefficients = new double[size];
-		for(int i = 0; i < result.getNumElements(); i++)
-			pCoefficients[i] = result.get(i); 
-
-		//assigning coefficients to the polynomial
-		poly.setConstant(pCoefficients[0]);
-		
-		//add x coefficients to polynomial
-		for (int i = 0; i < xSize; i++)
-			poly.setNthCoefficient(i, true, pCoefficients[i+1]);
-		
-		//add y coefficients to polynomial
-		for (int i = 0; i < ySize; i++) {
-			int index = xSize + 1;
-			poly.setNthCoefficient(i, false, pCoefficients[index]);
-		}
-		
-		return poly;
-	}
+package com;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ * Simulate the heat equation in 2D. Given the input points, this class will
+ * create a spline polynomial surface intersecting the points. This surface is used as the
+ * initial value condition. The surface is then put into an object called NumericalSolution
+ * which is returned to the user. Class NumericalSolution contains all the information about
+ * the solution.
+ * 
+ * Assumptions that need to be satisfied:
+ * 			- Boundary condition is 0.
+ */
+public class HeatSimulation {
+	
+	/**
+	 * Kind of surface fitted through the points:
+	 * 		- POLYNOMIAL:	A polynomial with as many terms as points, see CreateSplineSurface(...).
+	 * 		- RADIAL_BASIS:	Compactly supported radial basis functions, see RadialBasisSurface.
+	 * 						Scales to thousands of points.
+	 */
+	public enum Fit { POLYNOMIAL, RADIAL_BASIS }
+		
+	/**
+	 * Given points are turned into a spline surface. This spline surface is then projected
+	 * onto a 2D mesh plane which contains the z-value.
+	 * 
+	 * Mesh explanation:
+	 * 		The mesh consist of size meshX by meshY. Note that the outer values, that is, the bound of 
+	 * 		the mesh is set to value 0. Values put in the mesh comes from the rectangle
+	 * 		ranging from origin to boundX in one direction and from origin to boundY in the
+	 * 		other direction.
+	 * 
+	 * 		Origin    ...     (boundX,0)
+	 * 		.                     .
+	 * 		.                     .
+	 * 		.                     .
+	 * 		(0,boundY) ... (boundX,boundY)
+	 * 
+	 * 		meshX and meshY are the amount of cells to create and deltaStep is the size of
+	 * 		the steps taken when extracting from the spline surface.
+	 * 
+	 * @param points	Used to create the spline surface.
+	 * @param alpha		Thermal diffusivity constant.	
+	 * @param meshX		Mesh size in x direction.
+	 * @param meshY		Mesh size in y direction.
+	 * @return			A NumericalSoulution that contains all the information about the solution
+	 * 					to the equation.
+	 */
+	public NumericalSolution setupSimulation(List<Vertex> points, double alpha, int meshX, int meshY) {
+		return setupSimulation(points, alpha, meshX, meshY, NumericalSolution.Mode.MATRIX);
+	}
+	
+	/**
+	 * Same as setupSimulation(points, alpha, meshX, meshY) but the returned NumericalSolution
+	 * uses the given mode for calculating the solution.
+	 * @param mode		How the NumericalSolution calculates the change in temperature.
+	 */
+	public NumericalSolution setupSimulation(List<Vertex> points, double alpha, int meshX, int meshY, NumericalSolution.Mode mode) {
+		return setupSimulation(points, alpha, meshX, meshY, mode, 1);
+	}
+	
+	/**
+	 * Same as setupSimulation(points, alpha, meshX, meshY, mode) but the returned NumericalSolution
+	 * runs on the given amount of threads.
+	 * @param threads	Amount of threads, MATRIX only supports 1.
+	 */
+	public NumericalSolution setupSimulation(List<Vertex> points, double alpha, int meshX, int meshY, NumericalSolution.Mode mode, int threads) {
+		return setupSimulation(points, alpha, meshX, meshY, mode, threads, Fit.POLYNOMIAL);
+	}
+	
+	/**
+	 * Same as setupSimulation(points, alpha, meshX, meshY, mode, threads) but with the given kind
+	 * of surface through the points.
+	 * @param fit		Kind of surface, use RADIAL_BASIS for more than a few dozen points.
+	 */
+	public NumericalSolution setupSimulation(List<Vertex> points, double alpha, int meshX, int meshY, NumericalSolution.Mode mode, int threads, Fit fit) {
+		return new NumericalSolution(projectMesh(points, meshX, meshY, fit), alpha, mode, threads);
+	}
+	
+	/**
+	 * Same as setupSimulation(points, alpha, meshX, meshY) but the solution is calculated
+	 * implicitly, see ImplicitSolution.
+	 * @param scheme	Implicit time integration scheme.
+	 * @param backend	How the linear systems of the scheme are solved.
+	 */
+	public ImplicitSolution setupImplicitSimulation(List<Vertex> points, double alpha, int meshX, int meshY,
+			ImplicitSolution.Scheme scheme, ImplicitSolution.Backend backend) {
+		return new ImplicitSolution(projectMesh(points, meshX, meshY, Fit.POLYNOMIAL), alpha, scheme, backend);
+	}
+	
+	/**
+	 * Same as setupSimulation(points, alpha, meshX, meshY) but the temperatures are stored and calculated
+	 * as float, see FloatSolution.
+	 * @param precision	How the time steps are calculated.
+	 * @param threads	Amount of threads.
+	 */
+	public FloatSolution setupFloatSimulation(List<Vertex> points, double alpha, int meshX, int meshY, FloatSolution.Precision precision, int threads) {
+		return new FloatSolution(projectMesh(points, meshX, meshY, Fit.POLYNOMIAL), alpha, precision, threads);
+	}
+	
+	/**
+	 * Same as setupSimulation(points, alpha, meshX, meshY) but the temperatures are stored in a
+	 * memory-mapped file instead of on the heap, see MappedField. The mesh is projected one row
+	 * at a time, so it never has to fit in memory.
+	 * @param path		File to store the temperatures in, an existing file is overwritten.
+	 */
+	public MappedField setupMappedSimulation(List<Vertex> points, double alpha, int meshX, int meshY, Path path) throws IOException {
+		Surface surface = fitSurface(points, Fit.POLYNOMIAL);
+		MappedField field = MappedField.create(path, meshY, meshX, alpha);
+		double[] row = new double[meshX];
+		for (int i = 0; i < meshY; i++) {
+			projectRow(surface, i, meshX, meshY, row);
+			field.setRow(i, row);
+		}
+		field.flush();
+		return field;
+	}
+	
+	/**
+	 * Create the surface from the points and project it onto a meshX by meshY mesh
+	 * with the bound set to 0.
+	 */
+	private SimpleMatrix projectMesh(List<Vertex> points, int meshX, int meshY, Fit fit) {
+		return projectPolynomial(fitSurface(points, fit), meshX, meshY);
+	}
+	
+	/**
+	 * Create the surface from the points.
+	 */
+	private Surface fitSurface(List<Vertex> points, Fit fit) {
+		if (points.isEmpty())
+			throw new IllegalArgumentException("The list containing points is empty!");
+		
+		if (fit == Fit.RADIAL_BASIS)
+			return new RadialBasisSurface(points);
+		Polynomial poly = CreateSplineSurface(points);
+		System.out.println(poly);
+		return poly;
+	}
+	
+	/**
+	 * Project the surface onto a meshX by meshY mesh with the bound set to 0.
+	 * 
+	 * The rows are filled in parallel straight into the flat buffer of the returned matrix, see
+	 * projectInto(...).
+	 */
+	SimpleMatrix projectPolynomial(Surface surface, int meshX, int meshY) {
+		DMatrixRMaj matrix = new DMatrixRMaj(meshY, meshX);
+		//the bound is already 0
+		projectInto(surface, meshX, meshY, matrix.getData(), true);
+		return SimpleMatrix.wrap(matrix);
+	}
+	
+	/**
+	 * Project the surface onto the interior of a flat row-major meshX by meshY grid. The bound is not
+	 * written to. A polynomial is separable, so its x and y parts are only evaluated once per column
+	 * and once per row and then added per cell.
+	 * @param data		Output, at least meshX * meshY values.
+	 * @param parallel	Fill the rows in parallel, false when the caller already runs on a thread pool.
+	 */
+	void projectInto(Surface surface, int meshX, int meshY, double[] data, boolean parallel) {
+		IntStream rows = IntStream.range(1, meshY - 1);
+		if (parallel)
+			rows = rows.parallel();
+		if (surface instanceof Polynomial) {
+			Polynomial poly = (Polynomial) surface;
+			double[] profileX = new double[meshX];
+			for (int j = 1; j < meshX - 1; j++)
+				profileX[j] = poly.getConstant() + poly.valueX(j);
+			rows.forEach(i -> {
+				double valueY = poly.valueY(i);
+				int row = i * meshX;
+				for (int j = 1; j < meshX - 1; j++)
+					data[row + j] = profileX[j] + valueY;
+			});
+		}
+		else {
+			rows.forEach(i -> {
+				int row = i * meshX;
+				for (int j = 1; j < meshX - 1; j++)
+					data[row + j] = surface.valueAt(j, i);
+			});
+		}
+	}
+	
+	/**
+	 * Project the surface onto row i of a meshX by meshY mesh with the bound set to 0.
+	 * @param row	Output, must have room for meshX values.
+	 */
+	void projectRow(Surface surface, int i, int meshX, int meshY, double[] row) {
+		double yPos = i;
+		for (int j = 0; j < meshX; j++) {
+			//check if on the bound, set it fixed to zero.
+			if (i == 0 || i == meshY-1 || j == 0 || j == meshX-1) {
+				row[j] = 0;
+				continue;
+			}
+			double xPos = j;
+			//get surface value and put it into the mesh
+			row[j] = surface.valueAt(xPos, yPos);
+		}
+	}
+	
+	/**
+	 * Create a spline surface given the points. Can choose any
+	 * amount of points as long as there is at least one.
+	 * 
+	 * Note that this is a weaker implementation of a general spline surfare,
+	 * that is, it does not model the interaction between the x and y
+	 * varaibles. Non-linear relationships between x and y can thus
+	 * not be modeled (there are no terms on the form x^ay^b where a,b are positive integers).
+	 * The result is a potensial less accurate spline model in cases of non-linearity between x,y.
+	 * 
+	 * @param points	Points used to create the spline surface.
+	 * @return			Returns a polynomial that is the surface. 
+	 */
+	Polynomial CreateSplineSurface(List<Vertex> points) {
+		return CreateSplineSurface(points, points.size());
+	}
+	
+	/**
+	 * Same as CreateSplineSurface(points) but the polynomial has the given amount of terms.
+	 * With fewer terms than points the polynomial is fitted by least squares instead of going
+	 * through every point.
+	 * 
+	 * The system is solved by LU decomposition. If the matrix is singular (e.g. two points with the
+	 * same x or y position) or there are fewer terms than points, the least squares solution is found
+	 * by QR decomposition with column pivoting instead.
+	 * 
+	 * @param terms		Amount of terms including the constant, at most the amount of points.
+	 */
+	Polynomial CreateSplineSurface(List<Vertex> points, int terms) {
+		if (terms < 1 || terms > points.size())
+			throw new IllegalArgumentException("Amount of terms must be between 1 and the amount of points!");
+		Polynomial poly = new Polynomial(terms);
+		//used for readability
+		int size = poly.getSize();
+		int equations = points.size();
+		int xSize = poly.getXSize();
+		int ySize = poly.getYSize();
+		
+		/**
+		 * Start creating the equations for the system:
+		 *
+		 * For Loop Description:
+		 * -	First term is the constant value without any x or y.
+		 * -	Loop adding all the terms containing x added in increasing order.
+		 * -	Loop adding all the terms containing y added in increasing order.
+		 * 
+		 * Outer loop creates the equations.
+		 * Inner loop loops through the equation term wise.
+		 * 
+		 * The loop also creates the "b-vector" which contains all the values that
+		 * the polynomial are going to equal, i.e. this b vector: Ax = b. 
+		 */
+		//b vector
+		double[][] vectorData = new double[equations][1];
+		//coefficient matrix A in Ax = b
+		double[][] matrixData = new double[equations][size];
+		//Adding values to matrix and vector
+		for (int eqIndex = 0; eqIndex < equations; eqIndex++) {
+			Vertex point = points.get(eqIndex);
+			vectorData[eqIndex][0] = point.getZ();
+			matrixData[eqIndex][0] = 1; //equal to 1 because of constant
+			//Add x terms to matrix
+			for (int termIndex = 0; termIndex < xSize; termIndex++) {
+				double xPos = point.getX();
+				double val = Math.pow(xPos, termIndex+1);
+				matrixData[eqIndex][termIndex+1] = val;
+			}
+			//add y terms to matrix
+			for (int termIndex = xSize+1; termIndex < size; termIndex++) {
+				double yPos = point.getY();
+				double val = Math.pow(yPos, termIndex - xSize);
+				matrixData[eqIndex][termIndex] = val;
+			}
+		}
+		//creating b vector
+		DMatrixRMaj m = new DMatrixRMaj(matrixData);
+		DMatrixRMaj b = new DMatrixRMaj(vectorData);
+		DMatrixRMaj result = new DMatrixRMaj(size, 1);
+		//solve the system instead of inverting the matrix, which is both faster and more accurate
+		boolean solved = false;
+		if (equations == size) {
+			LinearSolverDense<DMatrixRMaj> lu = LinearSolverFactory_DDRM.lu(size);
+			if (lu.setA(lu.modifiesA() ? m.copy() : m)) {
+				lu.solve(b, result);
+				solved = isFinite(result);
+			}
+		}
+		if (!solved) {
+			LinearSolverDense<DMatrixRMaj> qr = LinearSolverFactory_DDRM.leastSquaresQrPivot(true, false);
+			if (!qr.setA(m))
+				throw new IllegalArgumentException("Could not fit a polynomial to the points!");
+			qr.solve(b, result);
+		}
+		
+		//extract coefficients
+		double[] pCoefficients = new double[size];
+		for(int i = 0; i < result.getNumElements(); i++)
+			pCoefficients[i] = result.get(i); 
+
+		//assigning coefficients to the polynomial
+		poly.setConstant(pCoefficients[0]);
+		
+		//add x coefficients to polynomial
+		for (int i = 0; i < xSize; i++)
+			poly.setNthCoefficient(i, true, pCoefficients[i+1]);
+		
+		//add y coefficients to polynomial
+		for (int i = 0; i < ySize; i++) {
+			int index = xSize + 1 + i;
+			poly.setNthCoefficient(i, false, pCoefficients[index]);
+		}
+		
+		return poly;
+	}
+	
+	private static boolean isFinite(DMatrixRMaj matrix) {
+		for (int i = 0; i < matrix.getNumElements(); i++)
+			if (!Double.isFinite(matrix.get(i))) return false;
+		return true;
+	}
 }
\ No newline at end of file
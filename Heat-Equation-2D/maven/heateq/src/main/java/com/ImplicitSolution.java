@@ -0,0 +1,227 @@
+package com;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * Implicit version of NumericalSolution. The explicit scheme in NumericalSolution becomes unstable
+ * when alpha * deltaTime is large, the implicit schemes in this class are stable for any time step.
+ * Large time steps can thus be used to reach a given time in far fewer steps.
+ *
+ * The same scaling as in NumericalSolution is used, that is, one time step of the explicit scheme is
+ * u = u + r * L u with r = alpha^2 * deltaTime^2 and L the 5-point stencil. The implicit schemes are:
+ * 		- BACKWARD_EULER:	(I - r L) u_new = u
+ * 		- CRANK_NICOLSON:	(I - r/2 L) u_new = (I + r/2 L) u
+ *
+ * The linear systems are never created as matrices. They are solved with one of the backends:
+ * 		- ADI:					L is split into the x and y direction, every time step is then a set of
+ * 								tridiagonal systems solved with the Thomas algorithm. For CRANK_NICOLSON
+ * 								this is the Peaceman-Rachford scheme. For BACKWARD_EULER the factored
+ * 								form (I - r Lx)(I - r Ly) u_new = u is used.
+ * 		- CONJUGATE_GRADIENT:	The system is solved as it is with ConjugateGradient.
+ * 		- MULTIGRID:			The system is solved as it is with Multigrid. The amount of cycles does not
+ * 								grow with the mesh size like the iterations of CONJUGATE_GRADIENT do.
+ *
+ * The bound is kept fixed, just like in NumericalSolution.
+ */
+public class ImplicitSolution {
+
+	public enum Scheme { BACKWARD_EULER, CRANK_NICOLSON }
+
+	public enum Backend { ADI, CONJUGATE_GRADIENT, MULTIGRID }
+
+	/**
+	 * Relative residual the CONJUGATE_GRADIENT and MULTIGRID backends solve down to.
+	 */
+	private static final double TOLERANCE = 1e-10;
+
+	/**
+	 * Most cycles the MULTIGRID backend uses in a time step.
+	 */
+	private static final int MAX_CYCLES = 50;
+
+	/**
+	 * Matrix containing the temperature for each pixel.
+	 */
+	private final SimpleMatrix dataMatrix;
+
+	private final double alpha;
+
+	private final Scheme scheme;
+
+	private final Backend backend;
+
+	private final int rows;
+	private final int cols;
+
+	/**
+	 * Flat row-major view of dataMatrix.
+	 */
+	private final double[] field;
+
+	/**
+	 * Scratch grid. ADI stores the half step in it, CONJUGATE_GRADIENT and MULTIGRID the right hand side.
+	 */
+	private final double[] scratch;
+
+	/**
+	 * Modified coefficients of the Thomas algorithm, they only depend on the time step.
+	 * Index k of the x arrays belongs to column k, index k of the y arrays to row k.
+	 */
+	private final double[] upperX, pivotX, upperY, pivotY;
+
+	/**
+	 * The time step the Thomas coefficients were calculated for.
+	 */
+	private double factoredDeltaTime = Double.NaN;
+
+	/**
+	 * Only created for the CONJUGATE_GRADIENT backend.
+	 */
+	private ConjugateGradient cg;
+
+	/**
+	 * Only created for the MULTIGRID backend.
+	 */
+	private Multigrid mg;
+
+	private int lastIterations = 0;
+
+	public ImplicitSolution(SimpleMatrix matrix, double alpha, Scheme scheme, Backend backend) {
+		this.dataMatrix = matrix;
+		this.alpha = alpha;
+		this.scheme = scheme;
+		this.backend = backend;
+		rows = matrix.getNumRows();
+		cols = matrix.getNumCols();
+		field = matrix.getDDRM().getData();
+		scratch = new double[rows * cols];
+		upperX = new double[cols];
+		pivotX = new double[cols];
+		upperY = new double[rows];
+		pivotY = new double[rows];
+		if (backend == Backend.CONJUGATE_GRADIENT)
+			cg = new ConjugateGradient(rows, cols);
+		if (backend == Backend.MULTIGRID)
+			mg = new Multigrid(rows, cols);
+	}
+
+	/**
+	 * Advance the solution by one time step.
+	 * @param deltaTime		Time step in seconds, can be much larger than in NumericalSolution.
+	 */
+	public void step(double deltaTime) {
+		double r = Math.pow(alpha, 2) * deltaTime * deltaTime;
+		if (backend == Backend.ADI)
+			stepADI(r, deltaTime);
+		else
+			stepIterative(r);
+	}
+
+	public SimpleMatrix getSolution() {
+		return dataMatrix;
+	}
+
+	public double getAlpha() { return alpha; }
+	public Scheme getScheme() { return scheme; }
+	public Backend getBackend() { return backend; }
+
+	/**
+	 * Amount of conjugate gradient iterations or multigrid cycles used in the last time step, 0 for ADI.
+	 */
+	public int getLastIterations() { return lastIterations; }
+
+	private void stepADI(double r, double deltaTime) {
+		//k is the weight of the implicit part of each half step
+		double k = scheme == Scheme.CRANK_NICOLSON ? r / 2 : r;
+		//weight of the explicit part, backward Euler does not have one
+		double e = scheme == Scheme.CRANK_NICOLSON ? r / 2 : 0;
+		if (deltaTime != factoredDeltaTime) {
+			factor(k, upperX, pivotX, cols);
+			factor(k, upperY, pivotY, rows);
+			factoredDeltaTime = deltaTime;
+		}
+		//the bound of the half step is the same as the bound of the solution
+		System.arraycopy(field, 0, scratch, 0, field.length);
+
+		//first half: implicit in x, explicit in y. Every row is a tridiagonal system.
+		for (int i = 1; i < rows - 1; i++) {
+			int row = i * cols;
+			//forward sweep, the bound values are moved to the right hand side
+			double prev = 0;
+			for (int j = 1; j < cols - 1; j++) {
+				int pos = row + j;
+				double rhs = field[pos] + e * (field[pos - cols] - 2 * field[pos] + field[pos + cols]);
+				if (j == 1) rhs += k * field[row];
+				if (j == cols - 2) rhs += k * field[row + cols - 1];
+				prev = (rhs + k * prev) / pivotX[j];
+				scratch[pos] = prev;
+			}
+			//back substitution
+			for (int j = cols - 3; j >= 1; j--)
+				scratch[row + j] -= upperX[j] * scratch[row + j + 1];
+		}
+
+		//second half: implicit in y, explicit in x. Every column is a tridiagonal system,
+		//all the columns are solved together to walk through memory row by row.
+		for (int i = 1; i < rows - 1; i++) {
+			int row = i * cols;
+			for (int j = 1; j < cols - 1; j++) {
+				int pos = row + j;
+				double rhs = scratch[pos] + e * (scratch[pos - 1] - 2 * scratch[pos] + scratch[pos + 1]);
+				if (i == 1) rhs += k * field[pos - cols];
+				if (i == rows - 2) rhs += k * field[pos + cols];
+				double prev = i == 1 ? 0 : field[pos - cols];
+				field[pos] = (rhs + k * prev) / pivotY[i];
+			}
+		}
+		//back substitution
+		for (int i = rows - 3; i >= 1; i--) {
+			int row = i * cols;
+			for (int j = 1; j < cols - 1; j++)
+				field[row + j] -= upperY[i] * field[row + j + cols];
+		}
+		lastIterations = 0;
+	}
+
+	/**
+	 * Thomas algorithm coefficients for the tridiagonal matrix with -k, 1 + 2k, -k on the diagonals,
+	 * for the unknowns 1 to n-2.
+	 */
+	private static void factor(double k, double[] upper, double[] pivot, int n) {
+		double b = 1 + 2 * k;
+		double prevUpper = 0;
+		for (int idx = 1; idx < n - 1; idx++) {
+			double m = b + k * prevUpper; // b - a * c'_{i-1} with a = -k
+			pivot[idx] = m;
+			upper[idx] = -k / m;
+			prevUpper = upper[idx];
+		}
+	}
+
+	/**
+	 * Time step of the CONJUGATE_GRADIENT and MULTIGRID backends.
+	 */
+	private void stepIterative(double r) {
+		double s;
+		if (scheme == Scheme.CRANK_NICOLSON) {
+			s = r / 2;
+			for (int i = 1; i < rows - 1; i++) {
+				for (int pos = i * cols + 1; pos < i * cols + cols - 1; pos++) {
+					double lap = field[pos - cols] + field[pos - 1] - 4 * field[pos] + field[pos + 1] + field[pos + cols];
+					scratch[pos] = field[pos] + s * lap;
+				}
+			}
+		}
+		else {
+			s = r;
+			System.arraycopy(field, 0, scratch, 0, field.length);
+		}
+		//the current temperatures are used as the initial guess
+		if (backend == Backend.MULTIGRID)
+			lastIterations = mg.solve(field, scratch, 1, s, TOLERANCE, MAX_CYCLES);
+		else
+			lastIterations = cg.solve(field, scratch, 1, s, TOLERANCE, rows * cols);
+	}
+}
@@ -0,0 +1,343 @@
+package com;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * Temperatures stored in a memory-mapped file instead of on the heap. The size of the mesh is thus
+ * only limited by the disk, the operating system keeps the parts that are in use in the page cache.
+ * The heap only holds the mapping objects, so the garbage collector never has to scan the temperatures.
+ *
+ * The file contains a small header followed by two fields which are used as a double buffer, just like
+ * DOUBLE_BUFFER mode in NumericalSolution. The header tells which of them is the current one, the time
+ * step and the simulated time. After flush() the file is a complete checkpoint, MappedField.open(...)
+ * continues from it (HeadlessHeat --mapped and --resume).
+ *
+ * File format (big-endian like Checkpoint, so a file can be moved between machines):
+ * 		int MAGIC, int VERSION, int rows, int cols, int current field, int unused,
+ * 		long step, double time, double alpha, padding up to 64 bytes,
+ * 		then the two fields as rows * cols doubles in row-major order.
+ *
+ * A single mapping can be at most 2 GB, so every field is mapped in segments of whole rows.
+ * A time step copies a window of rows (with the row above and below) out of the mapping, steps it with
+ * StencilKernel.step(...) and puts the new rows back, so the result is exactly the same as DOUBLE_BUFFER
+ * mode. With setThreads(...) the rows are split between several threads by a ParallelStepper.
+ */
+public class MappedField implements AutoCloseable {
+
+	private static final int MAGIC = 0x4845514D; // "HEQM"
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 64;
+
+	/**
+	 * Size of a window of rows in bytes, small enough to stay in the cache while it is stepped.
+	 */
+	private static final int WINDOW_BYTES = 1 << 20;
+
+	/**
+	 * Largest size of a single mapping in bytes.
+	 */
+	private static final long SEGMENT_BYTES = 1L << 30;
+
+	private final FileChannel channel;
+
+	private final MappedByteBuffer header;
+
+	/**
+	 * segments[field][segment], every segment holds rowsPerSegment rows.
+	 */
+	private final MappedByteBuffer[][] mapped;
+	private final DoubleBuffer[][] segments;
+
+	private final int rows;
+	private final int cols;
+	private final int rowsPerSegment;
+	private final double alpha;
+
+	private int current;
+	private long step;
+	private double time;
+
+	/**
+	 * Amount of rows stepped per window.
+	 */
+	private final int windowRows;
+
+	/**
+	 * Two windows per thread, the rows copied out of the mapping and the stepped rows.
+	 */
+	private final ThreadLocal<double[][]> windows;
+
+	private final StepKernel kernel = StencilKernel::step;
+
+	/**
+	 * Splits the rows between several threads. Null when running on a single thread.
+	 */
+	private ParallelStepper stepper;
+
+	/**
+	 * Fields and time step of the current call, read by the bands.
+	 */
+	private int from;
+	private int to;
+	private double deltaTime;
+
+	private final ParallelStepper.BandTask band = this::stepRows;
+
+	private MappedField(FileChannel channel, int rows, int cols, double alpha, boolean create) throws IOException {
+		this.channel = channel;
+		this.rows = rows;
+		this.cols = cols;
+		this.alpha = alpha;
+		long rowBytes = (long) cols * Double.BYTES;
+		if (rowBytes > SEGMENT_BYTES)
+			throw new IllegalArgumentException("A single row is larger than " + SEGMENT_BYTES + " bytes!");
+		rowsPerSegment = (int) Math.min(rows, SEGMENT_BYTES / rowBytes);
+		int segmentCount = (rows + rowsPerSegment - 1) / rowsPerSegment;
+		long fieldBytes = rowBytes * rows;
+		windowRows = (int) Math.max(1, WINDOW_BYTES / rowBytes);
+		windows = ThreadLocal.withInitial(() -> new double[][] { new double[(windowRows + 2) * cols], new double[(windowRows + 2) * cols] });
+
+		header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+		header.order(ByteOrder.BIG_ENDIAN);
+		mapped = new MappedByteBuffer[2][segmentCount];
+		segments = new DoubleBuffer[2][segmentCount];
+		for (int f = 0; f < 2; f++) {
+			long fieldStart = HEADER_SIZE + f * fieldBytes;
+			for (int s = 0; s < segmentCount; s++) {
+				int segmentRows = Math.min(rowsPerSegment, rows - s * rowsPerSegment);
+				long start = fieldStart + (long) s * rowsPerSegment * rowBytes;
+				mapped[f][s] = channel.map(FileChannel.MapMode.READ_WRITE, start, segmentRows * rowBytes);
+				mapped[f][s].order(ByteOrder.BIG_ENDIAN);
+				segments[f][s] = mapped[f][s].asDoubleBuffer();
+			}
+		}
+		if (create) {
+			header.putInt(0, MAGIC);
+			header.putInt(4, VERSION);
+			header.putInt(8, rows);
+			header.putInt(12, cols);
+			writeHeader();
+		}
+		else {
+			current = header.getInt(16);
+			step = header.getLong(24);
+			time = header.getDouble(32);
+		}
+	}
+
+	/**
+	 * Create a new file for a rows by cols mesh, all temperatures are 0. An existing file is overwritten.
+	 * @param path		File to store the temperatures in.
+	 * @param rows		Amount of rows in the mesh (including the bound).
+	 * @param cols		Amount of columns in the mesh (including the bound).
+	 * @param alpha		Thermal diffusivity constant.
+	 */
+	public static MappedField create(Path path, int rows, int cols, double alpha) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedField field = new MappedField(channel, rows, cols, alpha, true);
+		field.header.putDouble(40, alpha);
+		return field;
+	}
+
+	/**
+	 * Open a file written by a MappedField, e.g. to continue a simulation from it.
+	 */
+	public static MappedField open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+		header.order(ByteOrder.BIG_ENDIAN);
+		if (header.getInt(0) != MAGIC) {
+			channel.close();
+			throw new IOException(path + " is not a mapped field file!");
+		}
+		if (header.getInt(4) != VERSION) {
+			channel.close();
+			throw new IOException("Unsupported mapped field version " + header.getInt(4));
+		}
+		return new MappedField(channel, header.getInt(8), header.getInt(12), header.getDouble(40), false);
+	}
+
+	/**
+	 * True if the file starts like a file written by a MappedField, e.g. to tell it apart from a Checkpoint.
+	 */
+	public static boolean isMappedField(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.BIG_ENDIAN);
+			while (magic.hasRemaining())
+				if (channel.read(magic) < 0)
+					return false;
+			return magic.getInt(0) == MAGIC;
+		}
+	}
+
+	/**
+	 * Step the rows on the given amount of threads, see ParallelStepper.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Amount of threads must be at least 1!");
+		if (stepper != null)
+			stepper.shutdown();
+		stepper = threads > 1 ? new ParallelStepper(threads, rows) : null;
+	}
+
+	public int getThreads() {
+		return stepper == null ? 1 : stepper.getThreads();
+	}
+
+	public double get(int i, int j) {
+		return segment(current, i).get(offset(i) + j);
+	}
+
+	/**
+	 * Set a temperature of the current field. The bound of both fields is kept equal, since it is never
+	 * calculated.
+	 */
+	public void set(int i, int j, double val) {
+		segment(current, i).put(offset(i) + j, val);
+		if (i == 0 || i == rows - 1 || j == 0 || j == cols - 1)
+			segment(1 - current, i).put(offset(i) + j, val);
+	}
+
+	/**
+	 * Copy row i of the current field into row.
+	 */
+	public void getRow(int i, double[] row) {
+		segment(current, i).get(offset(i), row, 0, cols);
+	}
+
+	/**
+	 * Set row i of the current field, see set(...).
+	 */
+	public void setRow(int i, double[] row) {
+		segment(current, i).put(offset(i), row, 0, cols);
+		if (i == 0 || i == rows - 1) {
+			segment(1 - current, i).put(offset(i), row, 0, cols);
+		}
+		else {
+			segment(1 - current, i).put(offset(i), row[0]);
+			segment(1 - current, i).put(offset(i) + cols - 1, row[cols - 1]);
+		}
+	}
+
+	/**
+	 * Copy the current field from a matrix of the same size.
+	 */
+	public void copyFrom(SimpleMatrix matrix) {
+		double[] data = matrix.getDDRM().getData();
+		double[] row = new double[cols];
+		for (int i = 0; i < rows; i++) {
+			System.arraycopy(data, i * cols, row, 0, cols);
+			setRow(i, row);
+		}
+	}
+
+	/**
+	 * Copy the current field into a new matrix. Only for meshes that fit on the heap.
+	 */
+	public SimpleMatrix toMatrix() {
+		SimpleMatrix matrix = new SimpleMatrix(rows, cols);
+		double[] data = matrix.getDDRM().getData();
+		for (int i = 0; i < rows; i++)
+			segment(current, i).get(offset(i), data, i * cols, cols);
+		return matrix;
+	}
+
+	/**
+	 * Advance the temperatures by one time step.
+	 * @param deltaTime		Time step in seconds.
+	 */
+	public void step(double deltaTime) {
+		from = current;
+		to = 1 - current;
+		this.deltaTime = deltaTime;
+		if (stepper != null)
+			stepper.forEachBand(band);
+		else
+			stepRows(1, rows - 1);
+		current = to;
+		step++;
+		time += deltaTime;
+		writeHeader();
+	}
+
+	/**
+	 * Advance the temperatures by several time steps.
+	 */
+	public void advance(long steps, double deltaTime) {
+		for (long n = 0; n < steps; n++)
+			step(deltaTime);
+	}
+
+	/**
+	 * Step the rows rowStart to rowEnd (exclusive) one window at a time.
+	 */
+	private void stepRows(int rowStart, int rowEnd) {
+		double[][] window = windows.get();
+		double[] u = window[0];
+		double[] next = window[1];
+		for (int start = rowStart; start < rowEnd; start += windowRows) {
+			int end = Math.min(start + windowRows, rowEnd);
+			//row i of the field is row i - start + 1 of the window
+			for (int i = start - 1; i <= end; i++)
+				segment(from, i).get(offset(i), u, (i - start + 1) * cols, cols);
+			kernel.step(u, next, cols, alpha, deltaTime, 1, end - start + 1);
+			//the bound columns are never calculated
+			for (int i = start; i < end; i++)
+				segment(to, i).put(offset(i) + 1, next, (i - start + 1) * cols + 1, cols - 2);
+		}
+	}
+
+	/**
+	 * Write all changes to the file. Afterwards the file is a checkpoint of the current time step.
+	 */
+	public void flush() {
+		for (MappedByteBuffer[] field : mapped)
+			for (MappedByteBuffer segment : field)
+				segment.force();
+		header.force();
+	}
+
+	/**
+	 * Flush and close the file and stop the threads. The mapping itself is released by the garbage collector.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (stepper != null)
+			stepper.shutdown();
+		flush();
+		channel.close();
+	}
+
+	public int getRows() { return rows; }
+	public int getCols() { return cols; }
+	public double getAlpha() { return alpha; }
+	public long getStep() { return step; }
+	public double getTime() { return time; }
+
+	private void writeHeader() {
+		header.putInt(16, current);
+		header.putLong(24, step);
+		header.putDouble(32, time);
+	}
+
+	private DoubleBuffer segment(int field, int i) {
+		return segments[field][i / rowsPerSegment];
+	}
+
+	private int offset(int i) {
+		return (i % rowsPerSegment) * cols;
+	}
+}
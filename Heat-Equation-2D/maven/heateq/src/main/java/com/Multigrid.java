@@ -0,0 +1,430 @@
+package com;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * Geometric multigrid solver for the same linear systems as ConjugateGradient,
+ *
+ * 		sigma * u - s * L u = b
+ *
+ * with the bound of u fixed. With sigma = 0 and b = 0 the solution is the steady state, the temperatures
+ * the simulation ends up at for the given bound. With sigma = 1 it is the system of an implicit time step,
+ * see ImplicitSolution.
+ *
+ * Gauss-Seidel sweeps quickly remove the part of the error that changes from pixel to pixel, but hardly
+ * touch the smooth part, which is why plain iterations (and explicit time steps) need so many steps on
+ * fine meshes. A smooth error can however be represented on a grid with half as many points in each
+ * direction, where it is no longer as smooth. The solver thus builds a hierarchy of grids, each about half
+ * the size of the one before, down to a grid of at most COARSEST points in a direction which is solved with
+ * ConjugateGradient. One V-cycle on a grid:
+ * 		- PRE_SMOOTH red-black Gauss-Seidel sweeps
+ * 		- the residual is moved to the coarser grid (restriction) and the error is solved for there with a
+ * 		  V-cycle on the coarser grid
+ * 		- the error is interpolated back (prolongation), u is corrected and POST_SMOOTH more sweeps are done
+ * A cycle costs about 4/3 of the work on the finest grid alone, so O(N), and reduces the residual by a
+ * factor that does not depend on the size of the mesh.
+ *
+ * Full multigrid (solveFMG) first solves the problem on the coarsest grid and uses the interpolated solution
+ * as the initial guess of the next finer grid, with one V-cycle per grid. This is the way to go when there
+ * is no good initial guess, as for the steady state. For implicit time steps the current temperatures are
+ * a good guess and solve(...) is enough.
+ *
+ * Coarse point I lies at I * H on the finer grid with H = (n - 1) / (m - 1), n fine and m coarse points.
+ * H is 2 when n - 1 is even, otherwise a bit more than 2 and the grids do not share all points, but bilinear
+ * interpolation and its transpose still work as the transfers. The operator on a coarse grid is the 5-point
+ * stencil for its spacing, s / hx^2 and s / hy^2 in front of the x and y parts of L.
+ *
+ * Grids are flat row-major double[] including the bound, see StencilKernel.
+ * The grids of all levels are created once, so solving does not allocate memory.
+ */
+public class Multigrid {
+
+	/**
+	 * Grids with more points than this in both directions are coarsened.
+	 */
+	private static final int COARSEST = 9;
+
+	private static final int PRE_SMOOTH = 2;
+	private static final int POST_SMOOTH = 2;
+
+	/**
+	 * Relative residual the coarsest grid is solved down to.
+	 */
+	private static final double COARSE_TOLERANCE = 1e-12;
+
+	/**
+	 * Most cycles used by the steadyState helpers.
+	 */
+	private static final int MAX_CYCLES = 100;
+
+	/**
+	 * One grid of the hierarchy.
+	 */
+	private static final class Level {
+		final int rows;
+		final int cols;
+
+		/**
+		 * Spacing in x and y direction, in cells of the finest grid.
+		 */
+		final double hx;
+		final double hy;
+
+		/**
+		 * Solution and right hand side. For the finest grid these are the arrays given to solve.
+		 */
+		double[] u;
+		double[] b;
+
+		final double[] r;
+
+		/**
+		 * The next coarser grid, null for the coarsest.
+		 */
+		Level coarse;
+
+		/**
+		 * For row i (column j) of this grid, the row (column) of the coarse grid at or before it and
+		 * the weight of the next coarse row (column) in the bilinear interpolation.
+		 */
+		int[] coarseRow;
+		int[] coarseCol;
+		double[] weightRow;
+		double[] weightCol;
+
+		Level(int rows, int cols, double hx, double hy) {
+			this.rows = rows;
+			this.cols = cols;
+			this.hx = hx;
+			this.hy = hy;
+			r = new double[rows * cols];
+		}
+	}
+
+	private final Level[] levels;
+
+	private final ConjugateGradient coarsest;
+
+	/**
+	 * Right hand side of the steady state, created when first needed.
+	 */
+	private double[] zero;
+
+	/**
+	 * Relative residual before the first and after every cycle of the last solve.
+	 */
+	private double[] history = new double[MAX_CYCLES + 1];
+	private int historyLength = 0;
+
+	public Multigrid(int rows, int cols) {
+		List<Level> list = new ArrayList<>();
+		Level level = new Level(rows, cols, 1, 1);
+		list.add(level);
+		while (level.rows > COARSEST && level.cols > COARSEST) {
+			int coarseRows = (level.rows - 1) / 2 + 1;
+			int coarseCols = (level.cols - 1) / 2 + 1;
+			Level coarse = new Level(coarseRows, coarseCols,
+					level.hx * (level.cols - 1) / (coarseCols - 1), level.hy * (level.rows - 1) / (coarseRows - 1));
+			coarse.u = new double[coarseRows * coarseCols];
+			coarse.b = new double[coarseRows * coarseCols];
+			level.coarse = coarse;
+			level.coarseRow = new int[level.rows];
+			level.weightRow = new double[level.rows];
+			transfer(level.rows, coarseRows, level.coarseRow, level.weightRow);
+			level.coarseCol = new int[level.cols];
+			level.weightCol = new double[level.cols];
+			transfer(level.cols, coarseCols, level.coarseCol, level.weightCol);
+			list.add(coarse);
+			level = coarse;
+		}
+		levels = list.toArray(new Level[0]);
+		coarsest = new ConjugateGradient(level.rows, level.cols);
+	}
+
+	/**
+	 * Solve sigma * u - s * L u = b with V-cycles.
+	 * @param u				Initial guess of the interior and the fixed bound. Contains the solution afterwards.
+	 * @param b				Right hand side, only the interior is used.
+	 * @param sigma			Factor in front of u, at least 0.
+	 * @param s				Factor in front of L u, larger than 0.
+	 * @param tolerance		Stop when the relative residual (see getResidual()) is below this value.
+	 * @param maxCycles		Stop after this many cycles.
+	 * @return				Amount of cycles used.
+	 */
+	public int solve(double[] u, double[] b, double sigma, double s, double tolerance, int maxCycles) {
+		return cycles(u, b, sigma, s, tolerance, maxCycles, false);
+	}
+
+	/**
+	 * Same as solve(...), but the first cycle is a full multigrid cycle which ignores the interior of u.
+	 */
+	public int solveFMG(double[] u, double[] b, double sigma, double s, double tolerance, int maxCycles) {
+		return cycles(u, b, sigma, s, tolerance, maxCycles, true);
+	}
+
+	/**
+	 * Replace the interior of u with the steady state for the bound of u, i.e. solve L u = 0.
+	 * @return	Amount of cycles used.
+	 */
+	public int steadyState(double[] u, double tolerance, int maxCycles) {
+		if (zero == null)
+			zero = new double[levels[0].rows * levels[0].cols];
+		return solveFMG(u, zero, 0, 1, tolerance, maxCycles);
+	}
+
+	/**
+	 * Replace the inside of the field with the steady state for its bound.
+	 * @return	Amount of cycles used.
+	 */
+	public static int steadyState(SimpleMatrix field, double tolerance) {
+		Multigrid mg = new Multigrid(field.getNumRows(), field.getNumCols());
+		return mg.steadyState(field.getDDRM().getData(), tolerance, MAX_CYCLES);
+	}
+
+	/**
+	 * Replace the inside of the mesh with the steady state for its bound.
+	 * @return	Amount of cycles used.
+	 */
+	public static int steadyState(Mesh mesh, double tolerance) {
+		int rows = mesh.getYSize();
+		int cols = mesh.getXSize();
+		double[] u = new double[rows * cols];
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < cols; j++)
+				u[i * cols + j] = mesh.getElement(i, j);
+		int cycles = new Multigrid(rows, cols).steadyState(u, tolerance, MAX_CYCLES);
+		for (int i = 1; i < rows - 1; i++)
+			for (int j = 1; j < cols - 1; j++)
+				mesh.setElement(i, j, u[i * cols + j]);
+		return cycles;
+	}
+
+	/**
+	 * Relative residual |f - Au| / |f| after the last solve, where f is b with the fixed bound
+	 * moved to it (the right hand side of the system for the interior).
+	 */
+	public double getResidual() { return historyLength == 0 ? Double.NaN : history[historyLength - 1]; }
+
+	/**
+	 * Relative residual before the first and after every cycle of the last solve.
+	 */
+	public double[] getResidualHistory() { return Arrays.copyOf(history, historyLength); }
+
+	/**
+	 * Amount of grids, the finest included.
+	 */
+	public int getLevels() { return levels.length; }
+
+	private int cycles(double[] u, double[] b, double sigma, double s, double tolerance, int maxCycles, boolean full) {
+		Level fine = levels[0];
+		fine.u = u;
+		fine.b = b;
+		if (history.length < maxCycles + 1)
+			history = new double[maxCycles + 1];
+		double norm = rhsNorm(fine, s);
+		historyLength = 0;
+		double residual = Math.sqrt(residual(fine, sigma, s / (fine.hx * fine.hx), s / (fine.hy * fine.hy))) / norm;
+		history[historyLength++] = residual;
+
+		int cycles = 0;
+		while (residual > tolerance && cycles < maxCycles) {
+			if (full && cycles == 0)
+				fullMultigrid(sigma, s);
+			else
+				vCycle(fine, sigma, s);
+			cycles++;
+			residual = Math.sqrt(residual(fine, sigma, s / (fine.hx * fine.hx), s / (fine.hy * fine.hy))) / norm;
+			history[historyLength++] = residual;
+		}
+		return cycles;
+	}
+
+	private void vCycle(Level level, double sigma, double s) {
+		double sx = s / (level.hx * level.hx);
+		double sy = s / (level.hy * level.hy);
+		if (level.coarse == null) {
+			coarsest.solve(level.u, level.b, sigma, sx, sy, COARSE_TOLERANCE, level.rows * level.cols);
+			return;
+		}
+		for (int k = 0; k < PRE_SMOOTH; k++)
+			smooth(level, sigma, sx, sy);
+		residual(level, sigma, sx, sy);
+		Level coarse = level.coarse;
+		restrict(level, level.r, coarse.b);
+		//the error is 0 on the bound
+		Arrays.fill(coarse.u, 0);
+		vCycle(coarse, sigma, s);
+		prolong(level, true);
+		for (int k = 0; k < POST_SMOOTH; k++)
+			smooth(level, sigma, sx, sy);
+	}
+
+	private void fullMultigrid(double sigma, double s) {
+		//the right hand side and the bound on every grid
+		for (int l = 0; l < levels.length - 1; l++) {
+			Level level = levels[l];
+			Level coarse = level.coarse;
+			restrict(level, level.b, coarse.b);
+			Arrays.fill(coarse.u, 0);
+			for (int i = 0; i < coarse.rows; i++) {
+				double y = i * (level.rows - 1) / (double) (coarse.rows - 1);
+				int step = i == 0 || i == coarse.rows - 1 ? 1 : coarse.cols - 1;
+				for (int j = 0; j < coarse.cols; j += step) {
+					double x = j * (level.cols - 1) / (double) (coarse.cols - 1);
+					coarse.u[i * coarse.cols + j] = sample(level, y, x);
+				}
+			}
+		}
+		Level last = levels[levels.length - 1];
+		vCycle(last, sigma, s);
+		for (int l = levels.length - 2; l >= 0; l--) {
+			prolong(levels[l], false);
+			vCycle(levels[l], sigma, s);
+		}
+	}
+
+	/**
+	 * One red-black Gauss-Seidel sweep. The points of one color only depend on the points of the other color.
+	 */
+	private static void smooth(Level level, double sigma, double sx, double sy) {
+		double[] u = level.u;
+		double[] b = level.b;
+		int cols = level.cols;
+		double diagonal = sigma + 2 * sx + 2 * sy;
+		for (int color = 0; color < 2; color++) {
+			for (int i = 1; i < level.rows - 1; i++) {
+				int row = i * cols;
+				for (int pos = row + 1 + ((i + color) & 1); pos < row + cols - 1; pos += 2)
+					u[pos] = (b[pos] + sx * (u[pos - 1] + u[pos + 1]) + sy * (u[pos - cols] + u[pos + cols])) / diagonal;
+			}
+		}
+	}
+
+	/**
+	 * Store b - Au in level.r and return the sum of its squares.
+	 */
+	private static double residual(Level level, double sigma, double sx, double sy) {
+		double[] u = level.u;
+		double[] b = level.b;
+		double[] r = level.r;
+		int cols = level.cols;
+		double sum = 0;
+		for (int i = 1; i < level.rows - 1; i++) {
+			for (int pos = i * cols + 1; pos < i * cols + cols - 1; pos++) {
+				double lapX = u[pos - 1] - 2 * u[pos] + u[pos + 1];
+				double lapY = u[pos - cols] - 2 * u[pos] + u[pos + cols];
+				double val = b[pos] - (sigma * u[pos] - sx * lapX - sy * lapY);
+				r[pos] = val;
+				sum += val * val;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Norm of the right hand side of the system for the interior, b with the fixed bound moved to it.
+	 * 1 if it is 0, so the residual is absolute then.
+	 */
+	private static double rhsNorm(Level level, double s) {
+		double[] u = level.u;
+		double[] b = level.b;
+		int rows = level.rows;
+		int cols = level.cols;
+		double sum = 0;
+		for (int i = 1; i < rows - 1; i++) {
+			for (int j = 1; j < cols - 1; j++) {
+				int pos = i * cols + j;
+				double val = b[pos];
+				if (i == 1) val += s * u[pos - cols];
+				if (i == rows - 2) val += s * u[pos + cols];
+				if (j == 1) val += s * u[pos - 1];
+				if (j == cols - 2) val += s * u[pos + 1];
+				sum += val * val;
+			}
+		}
+		return sum == 0 ? 1 : Math.sqrt(sum);
+	}
+
+	/**
+	 * Move the interior of the fine grid values to the coarse grid: the transpose of the bilinear
+	 * interpolation, divided by the ratio of the cell areas. On nested grids this is full weighting.
+	 */
+	private static void restrict(Level level, double[] fine, double[] coarse) {
+		Level c = level.coarse;
+		int cc = c.cols;
+		double scale = (level.hx * level.hy) / (c.hx * c.hy);
+		Arrays.fill(coarse, 0);
+		for (int i = 1; i < level.rows - 1; i++) {
+			int ci = level.coarseRow[i];
+			double wi = level.weightRow[i] * scale;
+			double vi = scale - wi;
+			for (int j = 1; j < level.cols - 1; j++) {
+				int cj = level.coarseCol[j];
+				double wj = level.weightCol[j];
+				double val = fine[i * level.cols + j];
+				int pos = ci * cc + cj;
+				coarse[pos] += vi * (1 - wj) * val;
+				coarse[pos + 1] += vi * wj * val;
+				coarse[pos + cc] += wi * (1 - wj) * val;
+				coarse[pos + cc + 1] += wi * wj * val;
+			}
+		}
+	}
+
+	/**
+	 * Bilinear interpolation of the coarse u to the interior of the fine u. Added to it if add is true,
+	 * which is the correction of a V-cycle, otherwise it replaces it.
+	 */
+	private static void prolong(Level level, boolean add) {
+		double[] u = level.u;
+		double[] e = level.coarse.u;
+		int cc = level.coarse.cols;
+		for (int i = 1; i < level.rows - 1; i++) {
+			int ci = level.coarseRow[i];
+			double wi = level.weightRow[i];
+			for (int j = 1; j < level.cols - 1; j++) {
+				int cj = level.coarseCol[j];
+				double wj = level.weightCol[j];
+				int pos = ci * cc + cj;
+				double val = (1 - wi) * ((1 - wj) * e[pos] + wj * e[pos + 1])
+						+ wi * ((1 - wj) * e[pos + cc] + wj * e[pos + cc + 1]);
+				if (add)
+					u[i * level.cols + j] += val;
+				else
+					u[i * level.cols + j] = val;
+			}
+		}
+	}
+
+	/**
+	 * Bilinear interpolation of u of the level at row y and column x.
+	 */
+	private static double sample(Level level, double y, double x) {
+		int i = Math.min((int) y, level.rows - 2);
+		int j = Math.min((int) x, level.cols - 2);
+		double wi = y - i;
+		double wj = x - j;
+		int pos = i * level.cols + j;
+		double[] u = level.u;
+		return (1 - wi) * ((1 - wj) * u[pos] + wj * u[pos + 1])
+				+ wi * ((1 - wj) * u[pos + level.cols] + wj * u[pos + level.cols + 1]);
+	}
+
+	/**
+	 * Where the fine points 0 to n-1 lie between the coarse points 0 to m-1.
+	 */
+	private static void transfer(int n, int m, int[] index, double[] weight) {
+		for (int k = 0; k < n; k++) {
+			double pos = k * (m - 1) / (double) (n - 1);
+			int c = Math.min((int) pos, m - 2);
+			index[k] = c;
+			weight[k] = pos - c;
+		}
+	}
+}
@@ -1,119 +1,525 @@
-package com;
-
-import org.ejml.simple.SimpleMatrix;
-
-/**
- * @author Marius
- *
- * Contains the numerical solution given the initial value condition given by the points.
- * 
- * By creating a linear system Ax = b, we can find the change in temperature when time changes
- * i.e. du/dt. This change can be added to the current temperature map (dataMatrix) simulating
- * a small change in the temperature.
- * 
- * Math used:
- * du/dt = d^2u/dx^2 + d^2u/dy^2. Right hand side is approxiamted by the numerical quotient 
- * of second derivative f'' = [f(x-h) - 4*f(x) + f(x+h)] / h^2.
- * Left hand side is approximated by f' = [f(x+h) - f(x)] / h.
- */
-public class NumericalSolution {
-
-	/**
-	 * Matrix containing the temperature for each pixel.
-	 */
-	private SimpleMatrix dataMatrix;
-	
-	/**
-	 * Matrix containing the last calculated velocityMatrix given the temperature.
-	 */
-	private SimpleMatrix velocityMatrix;
-	
-	private final double alpha;
-	
-	public NumericalSolution(SimpleMatrix matrix, double alpha) {
-		this.dataMatrix = matrix;
-		this.alpha = alpha;
-	}
-	
-	/**
-	 * Each value (pixel) from the dataMatrix is put into a matrix. Note that the bound
-	 * is not included in this new matrix because the temperature of the bound does not change.
-	 * 
-	 * A linear system Ax = b is then created where we solve for b. x is the vector
-	 * containing the temperatures u1, u2, ..., un. When b is found we know the 
-	 * change of temperature given time. The values (temperatures) of b is then put
-	 * into a matrix and is then being added to the original dataMatrix simulating a change
-	 * in temperature. 
-	 * @param deltaTime
-	 */
-	public void updateVelocity(double deltaTime) {
-		int rowSize = dataMatrix.getNumRows();
-		int colSize = dataMatrix.getNumCols();
-		int size = (rowSize - 2) * (colSize - 2);
-		double[][] linSys = new double[size][size];
-		
-		//store the values for the x vector in Ax = b
-		double[][] vectorData = new double[size][1];
-		int linSysPos = 0; //used to keep track of current index i.e. pos in linSys in the inner loop
-		//loop through dataMatrix skipping all boundary values
-		for (int i = 1; i < rowSize - 1; i++) {
-			for (int j = 1; j < colSize - 1; j++) {
-				vectorData[linSysPos][0] = dataMatrix.get(i,j);
-				
-				linSys[linSysPos][linSysPos] = -4 * Math.pow(alpha, 2);
-				//check behind in y
-				if (i - 1 != 0)
-					linSys[linSysPos][linSysPos - colSize + 2] = 1 * Math.pow(alpha, 2);
-
-				//check in front y
-				if (i + 1 != rowSize - 1)
-					linSys[linSysPos][linSysPos + colSize - 2] = 1 * Math.pow(alpha, 2);
-				
-				//check behind in x
-				if (j - 1 != 0)
-					linSys[linSysPos][linSysPos - 1] = 1 * Math.pow(alpha, 2);
-				
-				//check in front x
-				if (j + 1 != rowSize - 1)
-					linSys[linSysPos][linSysPos + 1] = 1 * Math.pow(alpha, 2); 
-				
-				linSysPos++;
-			}
-		}
-		
-		SimpleMatrix linMatrix = new SimpleMatrix(linSys);
-		
-		SimpleMatrix x = new SimpleMatrix(vectorData);
-		SimpleMatrix result = linMatrix.mult(x);
-		
-		double scalar = deltaTime * deltaTime;
-		
-		//multiply all elements by the scalar
-		for (int i = 0; i < result.getNumElements(); i++) {
-			double val = result.get(i);
-			result.set(i, val * scalar);
-		}
-				
-		//put result vector into a result matrix with same width and height as currentData
-		SimpleMatrix resultMatrix = new SimpleMatrix(rowSize, colSize);
-		
-		int vectorPosCounter = 0;
-		for (int i = 1; i < rowSize-1; i++) {
-			for (int j = 1; j < colSize-1; j++) {
-				double val = result.get(vectorPosCounter);
-				resultMatrix.set(i, j, val);
-				vectorPosCounter++;
-			}
-		}
-		//update velocityMatrix
-		velocityMatrix = resultMatrix;
-	}
-	
-	public void updateData() {
-		dataMatrix = dataMatrix.plus(velocityMatrix);
-	}
-	
-	public SimpleMatrix getSolution() {
-		return dataMatrix;
-	}
+package com;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * Contains the numerical solution given the initial value condition given by the points.
+ * 
+ * By creating a linear system Ax = b, we can find the change in temperature when time changes
+ * i.e. du/dt. This change can be added to the current temperature map (dataMatrix) simulating
+ * a small change in the temperature.
+ * 
+ * Math used:
+ * du/dt = d^2u/dx^2 + d^2u/dy^2. Right hand side is approxiamted by the numerical quotient 
+ * of second derivative f'' = [f(x-h) - 4*f(x) + f(x+h)] / h^2.
+ * Left hand side is approximated by f' = [f(x+h) - f(x)] / h.
+ * 
+ * The solution can be calculated in different modes:
+ * 		- MATRIX:	The linear system is created as a dense EJML matrix every time step.
+ * 		- STENCIL:	The linear system is never created, the stencil is applied directly to the
+ * 					temperatures (see StencilKernel). No memory is allocated per time step.
+ * 		- DOUBLE_BUFFER:	Same stencil as STENCIL, but the new temperatures are written straight into
+ * 					a second preallocated buffer which is swapped with the current one in updateData().
+ * 					Saves the velocity buffer and one pass over the grid per time step.
+ * 		- VECTOR:	Same as DOUBLE_BUFFER but with the SIMD kernel from StencilKernel.vectorized(),
+ * 					which falls back to the scalar kernel when the Vector API is not available.
+ * 		- TILED:	Same as DOUBLE_BUFFER, but advance(...) does several time steps per pass over
+ * 					cache sized tiles (see TiledStencilKernel). Meant for large meshes.
+ * 		- SPARSE:	Same as DOUBLE_BUFFER, but only the tiles heat has reached are calculated (see
+ * 					ActiveTiles). Meant for a few hot spots on a large field of zeros.
+ * 
+ * STENCIL, DOUBLE_BUFFER, VECTOR and TILED can run on several threads (see ParallelStepper), the result is
+ * exactly the same as on a single thread. The tiled passes of advance(...) run on a single thread.
+ * 
+ * The outer ring of the grid is the bound. By default it is a fixed temperature taken from the initial
+ * matrix; with setBoundary(...) it becomes a layer of ghost cells that is filled from the conditions of
+ * the edges after every time step (see Boundary), so the stencil never has to test where it is and runs
+ * the same sweep on any mesh. TILED mode only does several time steps per pass with DIRICHLET edges and
+ * SPARSE mode only supports DIRICHLET edges.
+ * 
+ * getStats() returns the min, max and energy of the temperatures. With setReductions(true) the double
+ * buffered modes calculate them in the same sweep as the time step, but only in the last time step of
+ * every advance(...), since nothing can read them in between. Otherwise (and in MATRIX and STENCIL mode)
+ * getStats() scans the grid the first time it is called after a time step, so the stats only cost
+ * something when they are read.
+ */
+public class NumericalSolution {
+
+	public enum Mode { MATRIX, STENCIL, DOUBLE_BUFFER, VECTOR, TILED, SPARSE }
+	
+	/**
+	 * Tile size and amount of time steps per pass in TILED mode. A tile with its halo
+	 * is about 0.7 MB, which fits in the L2 cache of most machines.
+	 */
+	private static final int TILE_ROWS = 64;
+	private static final int TILE_COLS = 512;
+	private static final int TILE_STEPS = 8;
+
+	/**
+	 * Tile size in SPARSE mode. Small tiles follow the heat closely, large tiles have less overhead.
+	 */
+	private static final int ACTIVE_TILE_ROWS = 32;
+	private static final int ACTIVE_TILE_COLS = 64;
+
+	/**
+	 * Matrix containing the temperature for each pixel.
+	 */
+	private SimpleMatrix dataMatrix;
+	
+	/**
+	 * Matrix containing the last calculated velocityMatrix given the temperature.
+	 */
+	private SimpleMatrix velocityMatrix;
+	
+	private final double alpha;
+	
+	private final Mode mode;
+	
+	/**
+	 * Flat row-major views of dataMatrix and velocityMatrix. Only used in STENCIL mode.
+	 * In the double buffered modes field is the view of dataMatrix and back the view of backMatrix.
+	 */
+	private double[] field;
+	private double[] velocity;
+	private double[] back;
+	
+	/**
+	 * The buffer the next temperatures are written to in the double buffered modes.
+	 */
+	private SimpleMatrix backMatrix;
+	
+	/**
+	 * True when back contains new temperatures that have not been swapped in yet.
+	 */
+	private boolean backReady = false;
+	
+	/**
+	 * True in the modes that swap between dataMatrix and backMatrix.
+	 */
+	private final boolean doubleBuffered;
+	
+	/**
+	 * Kernel calculating a whole time step in the double buffered modes.
+	 */
+	private StepKernel kernel;
+	
+	/**
+	 * Kernel doing several time steps per pass in TILED mode.
+	 */
+	private TiledStencilKernel tiled;
+
+	/**
+	 * The tiles calculated in SPARSE mode.
+	 */
+	private ActiveTiles activeTiles;
+	
+	/**
+	 * Splits the stencil between several threads. Null when running on a single thread.
+	 */
+	private ParallelStepper stepper;
+	
+	/**
+	 * Where the time of the time steps is reported, null for no metrics.
+	 */
+	private SolverMetrics metrics;
+	
+	/**
+	 * Stats of the current temperatures, only up to date when statsValid is true.
+	 */
+	private final FieldStats stats = new FieldStats();
+	private boolean statsValid = false;
+	private boolean reductions = false;
+	
+	/**
+	 * False during the time steps of advance(...) whose stats are never read.
+	 */
+	private boolean reduceStep = true;
+	
+	/**
+	 * Min and max of the bound, which never changes.
+	 */
+	private double boundMin;
+	private double boundMax;
+	
+	/**
+	 * Min, max and sum of the temperatures in back, when they were calculated by the kernel.
+	 */
+	private final double[] backStats = new double[3];
+	private boolean backReduced = false;
+	
+	/**
+	 * Conditions filling the bound after every time step, null to keep the bound of the initial matrix.
+	 */
+	private Boundary boundary;
+	
+	public NumericalSolution(SimpleMatrix matrix, double alpha) {
+		this(matrix, alpha, Mode.MATRIX);
+	}
+	
+	public NumericalSolution(SimpleMatrix matrix, double alpha, Mode mode) {
+		this(matrix, alpha, mode, 1);
+	}
+	
+	/**
+	 * @param matrix	Initial temperatures, including the bound.
+	 * @param alpha		Thermal diffusivity constant.
+	 * @param mode		How the change in temperature is calculated.
+	 * @param threads	Amount of threads, MATRIX and SPARSE mode only support 1.
+	 */
+	public NumericalSolution(SimpleMatrix matrix, double alpha, Mode mode, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Amount of threads must be at least 1!");
+		if (threads > 1 && (mode == Mode.MATRIX || mode == Mode.SPARSE))
+			throw new IllegalArgumentException(mode + " mode can only run on a single thread!");
+		this.dataMatrix = matrix;
+		this.alpha = alpha;
+		this.mode = mode;
+		if (mode == Mode.STENCIL) {
+			int rowSize = matrix.getNumRows();
+			int colSize = matrix.getNumCols();
+			velocityMatrix = new SimpleMatrix(rowSize, colSize);
+			field = matrix.getDDRM().getData();
+			velocity = velocityMatrix.getDDRM().getData();
+		}
+		doubleBuffered = mode == Mode.DOUBLE_BUFFER || mode == Mode.VECTOR || mode == Mode.TILED || mode == Mode.SPARSE;
+		if (doubleBuffered) {
+			kernel = mode == Mode.VECTOR ? StencilKernel.vectorized() : StencilKernel::step;
+			//the copy makes sure the bound is the same in both buffers
+			backMatrix = matrix.copy();
+			field = matrix.getDDRM().getData();
+			back = backMatrix.getDDRM().getData();
+		}
+		if (mode == Mode.SPARSE)
+			activeTiles = new ActiveTiles(field, matrix.getNumRows(), matrix.getNumCols(), ACTIVE_TILE_ROWS, ACTIVE_TILE_COLS);
+		if (threads > 1)
+			stepper = new ParallelStepper(threads, matrix.getNumRows());
+	}
+	
+	/**
+	 * Each value (pixel) from the dataMatrix is put into a matrix. Note that the bound
+	 * is not included in this new matrix because the temperature of the bound is not calculated,
+	 * the part of the bound is added to b separately.
+	 * 
+	 * A linear system Ax = b is then created where we solve for b. x is the vector
+	 * containing the temperatures u1, u2, ..., un. When b is found we know the 
+	 * change of temperature given time. The values (temperatures) of b is then put
+	 * into a matrix and is then being added to the original dataMatrix simulating a change
+	 * in temperature. 
+	 * 
+	 * In STENCIL mode Ax = b is calculated without creating A. In the double buffered modes b is
+	 * added to the temperatures right away, the result is ready to be swapped in by updateData().
+	 * @param deltaTime
+	 */
+	public void updateVelocity(double deltaTime) {
+		if (metrics == null) {
+			calculateVelocity(deltaTime);
+			return;
+		}
+		long start = metrics.start();
+		calculateVelocity(deltaTime);
+		metrics.record(SolverMetrics.Phase.STENCIL, start);
+	}
+	
+	private void calculateVelocity(double deltaTime) {
+		if (mode == Mode.STENCIL) {
+			if (stepper != null)
+				stepper.velocity(field, velocity, dataMatrix.getNumCols(), alpha, deltaTime);
+			else
+				StencilKernel.velocity(field, velocity, dataMatrix.getNumRows(), dataMatrix.getNumCols(), alpha, deltaTime);
+			return;
+		}
+		if (reductions && reduceStep && doubleBuffered) {
+			resetBackStats();
+			if (mode == Mode.SPARSE)
+				activeTiles.stepReduce(field, back, alpha, deltaTime, backStats);
+			else if (stepper != null)
+				stepper.stepReduce(kernel, field, back, dataMatrix.getNumCols(), alpha, deltaTime, backStats);
+			else
+				kernel.stepReduce(field, back, dataMatrix.getNumCols(), alpha, deltaTime, 1, dataMatrix.getNumRows() - 1, backStats);
+			backReduced = true;
+			backReady = true;
+			return;
+		}
+		if (mode == Mode.SPARSE) {
+			activeTiles.step(field, back, alpha, deltaTime);
+			backReady = true;
+			return;
+		}
+		if (doubleBuffered) {
+			if (stepper != null)
+				stepper.step(kernel, field, back, dataMatrix.getNumCols(), alpha, deltaTime);
+			else
+				kernel.step(field, back, dataMatrix.getNumCols(), alpha, deltaTime, 1, dataMatrix.getNumRows() - 1);
+			backReady = true;
+			return;
+		}
+		int rowSize = dataMatrix.getNumRows();
+		int colSize = dataMatrix.getNumCols();
+		int size = (rowSize - 2) * (colSize - 2);
+		double[][] linSys = new double[size][size];
+		
+		//store the values for the x vector in Ax = b
+		double[][] vectorData = new double[size][1];
+		//the neighbours on the bound are not in x, their part of b is added afterwards
+		double[] boundPart = new double[size];
+		int linSysPos = 0; //used to keep track of current index i.e. pos in linSys in the inner loop
+		//loop through dataMatrix skipping all boundary values
+		for (int i = 1; i < rowSize - 1; i++) {
+			for (int j = 1; j < colSize - 1; j++) {
+				vectorData[linSysPos][0] = dataMatrix.get(i,j);
+				
+				linSys[linSysPos][linSysPos] = -4 * Math.pow(alpha, 2);
+				//check behind in y
+				if (i - 1 != 0)
+					linSys[linSysPos][linSysPos - colSize + 2] = 1 * Math.pow(alpha, 2);
+				else
+					boundPart[linSysPos] += dataMatrix.get(i - 1, j);
+
+				//check in front y
+				if (i + 1 != rowSize - 1)
+					linSys[linSysPos][linSysPos + colSize - 2] = 1 * Math.pow(alpha, 2);
+				else
+					boundPart[linSysPos] += dataMatrix.get(i + 1, j);
+				
+				//check behind in x
+				if (j - 1 != 0)
+					linSys[linSysPos][linSysPos - 1] = 1 * Math.pow(alpha, 2);
+				else
+					boundPart[linSysPos] += dataMatrix.get(i, j - 1);
+				
+				//check in front x
+				if (j + 1 != colSize - 1)
+					linSys[linSysPos][linSysPos + 1] = 1 * Math.pow(alpha, 2); 
+				else
+					boundPart[linSysPos] += dataMatrix.get(i, j + 1);
+				
+				linSysPos++;
+			}
+		}
+		
+		SimpleMatrix linMatrix = new SimpleMatrix(linSys);
+		
+		SimpleMatrix x = new SimpleMatrix(vectorData);
+		SimpleMatrix result = linMatrix.mult(x);
+		
+		double scalar = deltaTime * deltaTime;
+		
+		//add the bound and multiply all elements by the scalar
+		for (int i = 0; i < result.getNumElements(); i++) {
+			double val = result.get(i) + boundPart[i] * Math.pow(alpha, 2);
+			result.set(i, val * scalar);
+		}
+				
+		//put result vector into a result matrix with same width and height as currentData
+		SimpleMatrix resultMatrix = new SimpleMatrix(rowSize, colSize);
+		
+		int vectorPosCounter = 0;
+		for (int i = 1; i < rowSize-1; i++) {
+			for (int j = 1; j < colSize-1; j++) {
+				double val = result.get(vectorPosCounter);
+				resultMatrix.set(i, j, val);
+				vectorPosCounter++;
+			}
+		}
+		//update velocityMatrix
+		velocityMatrix = resultMatrix;
+	}
+	
+	/**
+	 * Add the last calculated velocity to the temperatures. In the double buffered modes the two
+	 * buffers are swapped instead, nothing happens if updateVelocity has not been called since
+	 * the last swap.
+	 */
+	public void updateData() {
+		if (metrics == null) {
+			applyVelocity();
+			return;
+		}
+		long start = metrics.start();
+		if (applyVelocity()) {
+			metrics.record(SolverMetrics.Phase.UPDATE, start);
+			metrics.steps(1);
+		}
+	}
+	
+	/**
+	 * updateData() without the metrics.
+	 * @return	False if there was nothing to swap in.
+	 */
+	private boolean applyVelocity() {
+		if (mode == Mode.STENCIL) {
+			StencilKernel.add(field, velocity);
+		}
+		else if (doubleBuffered) {
+			if (!backReady) return false;
+			SimpleMatrix tmpMatrix = dataMatrix;
+			dataMatrix = backMatrix;
+			backMatrix = tmpMatrix;
+			double[] tmp = field;
+			field = back;
+			back = tmp;
+			backReady = false;
+		}
+		else {
+			dataMatrix = dataMatrix.plus(velocityMatrix);
+		}
+		if (boundary != null)
+			boundary.fill(dataMatrix.getDDRM().getData(), dataMatrix.getNumRows(), dataMatrix.getNumCols());
+		statsValid = backReduced;
+		if (backReduced)
+			stats.set(backStats[0], backStats[1], backStats[2]);
+		backReduced = false;
+		return true;
+	}
+	
+	/**
+	 * Start the reduction of the next temperatures from the bound, which the kernels do not reduce.
+	 */
+	private void resetBackStats() {
+		backStats[0] = boundMin;
+		backStats[1] = boundMax;
+		backStats[2] = 0;
+	}
+	
+	/**
+	 * Advance the solution by several time steps, the same as calling updateVelocity(deltaTime)
+	 * followed by updateData() steps times. In TILED mode up to TILE_STEPS time steps are done per
+	 * pass over the grid, as long as the bound does not change. With setReductions(true) only the last
+	 * time step calculates the stats.
+	 * @param steps			Amount of time steps.
+	 * @param deltaTime		Time step in seconds.
+	 */
+	public void advance(long steps, double deltaTime) {
+		if (mode == Mode.TILED && (boundary == null || boundary.isFixed())) {
+			if (tiled == null)
+				tiled = new TiledStencilKernel(dataMatrix.getNumRows(), dataMatrix.getNumCols(), TILE_ROWS, TILE_COLS, TILE_STEPS);
+			while (steps > 0) {
+				int k = (int) Math.min(steps, TILE_STEPS);
+				long start = metrics != null ? metrics.start() : 0;
+				if (reductions && steps == k) {
+					resetBackStats();
+					tiled.advance(field, back, alpha, deltaTime, k, backStats);
+					backReduced = true;
+				}
+				else {
+					tiled.advance(field, back, alpha, deltaTime, k);
+				}
+				backReady = true;
+				applyVelocity();
+				if (metrics != null) {
+					metrics.record(SolverMetrics.Phase.STENCIL, start);
+					metrics.steps(k);
+				}
+				steps -= k;
+			}
+			return;
+		}
+		for (long n = 0; n < steps; n++) {
+			reduceStep = n == steps - 1;
+			updateVelocity(deltaTime);
+			updateData();
+		}
+		reduceStep = true;
+	}
+	
+	public SimpleMatrix getSolution() {
+		return dataMatrix;
+	}
+	
+	public Mode getMode() {
+		return mode;
+	}
+	
+	public double getAlpha() {
+		return alpha;
+	}
+	
+	/**
+	 * Report the time of every time step to metrics, null to stop.
+	 */
+	public void setMetrics(SolverMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Calculate the stats in the time steps instead of scanning the grid when getStats() is called, see the
+	 * class description. Only worth it when the stats are read after most calls of advance(...).
+	 */
+	public void setReductions(boolean enabled) {
+		reductions = enabled;
+		backReduced = false;
+		if (!enabled) return;
+		int rows = dataMatrix.getNumRows();
+		int cols = dataMatrix.getNumCols();
+		double[] data = dataMatrix.getDDRM().getData();
+		if (boundary != null) {
+			boundMin = boundary.getMinValue();
+			boundMax = boundary.getMaxValue();
+			return;
+		}
+		boundMin = Double.POSITIVE_INFINITY;
+		boundMax = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				if (i != 0 && i != rows - 1 && j != 0 && j != cols - 1) continue;
+				boundMin = Math.min(boundMin, data[i * cols + j]);
+				boundMax = Math.max(boundMax, data[i * cols + j]);
+			}
+		}
+	}
+	
+	/**
+	 * Fill the bound from the conditions of the edges, now and after every time step. See Boundary.
+	 * @param boundary	Conditions of the edges, null keeps the bound as it is from now on.
+	 */
+	public void setBoundary(Boundary boundary) {
+		int rows = dataMatrix.getNumRows();
+		int cols = dataMatrix.getNumCols();
+		if (boundary != null) {
+			boundary.check(rows, cols);
+			if (mode == Mode.SPARSE && !boundary.isFixed())
+				throw new IllegalArgumentException("SPARSE mode only supports DIRICHLET edges!");
+			boundary.fill(dataMatrix.getDDRM().getData(), rows, cols);
+			//the other buffer has to hold the same bound for the kernels that do not write it
+			if (doubleBuffered)
+				boundary.fill(back, rows, cols);
+			if (mode == Mode.SPARSE)
+				activeTiles = new ActiveTiles(field, rows, cols, ACTIVE_TILE_ROWS, ACTIVE_TILE_COLS);
+		}
+		this.boundary = boundary;
+		statsValid = false;
+		if (reductions)
+			setReductions(true);
+	}
+	
+	public Boundary getBoundary() {
+		return boundary;
+	}
+	
+	/**
+	 * Min, max and energy of getSolution(), see the class description. The same object is updated by
+	 * every time step.
+	 */
+	public FieldStats getStats() {
+		if (!statsValid) {
+			stats.scan(dataMatrix.getDDRM().getData(), dataMatrix.getNumRows(), dataMatrix.getNumCols());
+			statsValid = true;
+		}
+		return stats;
+	}
+	
+	public int getThreads() {
+		return stepper == null ? 1 : stepper.getThreads();
+	}
+	
+	/**
+	 * Stops the threads used by the solution. Only needed when running on several threads,
+	 * the solution can not be updated afterwards.
+	 */
+	public void shutdown() {
+		if (stepper != null)
+			stepper.shutdown();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+package com;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @author Marius
+ *
+ * Runs the StencilKernel on several threads. The interior rows of the grid are split into bands
+ * and every band is calculated by a task in a ForkJoinPool. A call does not return before all
+ * the bands are done, so every time step ends with a barrier.
+ *
+ * Every pixel is calculated with the same arithmetic as in the serial StencilKernel, thus the
+ * result is exactly the same no matter how many threads are used.
+ *
+ * The tasks are created once and reused, so a time step does not allocate any memory.
+ */
+public class ParallelStepper {
+
+	/**
+	 * Amount of bands per thread. More bands than threads evens out the load between threads.
+	 */
+	private static final int BANDS_PER_THREAD = 4;
+
+	private final ForkJoinPool pool;
+
+	private final Band[] bands;
+
+	private final Root root = new Root();
+
+	private final int threads;
+
+	/**
+	 * Arguments of the current call, read by the bands.
+	 */
+	private double[] u;
+	private double[] out;
+	private int cols;
+	private double alpha;
+	private double deltaTime;
+	private boolean fused;
+	private boolean reduce;
+	private StepKernel kernel;
+	private BandTask task;
+
+	/**
+	 * Work on the rows rowStart (inclusive) to rowEnd (exclusive), see forEachBand(...).
+	 */
+	@FunctionalInterface
+	public interface BandTask {
+		void run(int rowStart, int rowEnd);
+	}
+
+	/**
+	 * @param threads	Size of the thread pool.
+	 * @param rows		Amount of rows in the grid (including the bound).
+	 */
+	public ParallelStepper(int threads, int rows) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Amount of threads must be at least 1!");
+		this.threads = threads;
+		pool = new ForkJoinPool(threads);
+		int interior = rows - 2;
+		int bandCount = Math.max(1, Math.min(interior, threads * BANDS_PER_THREAD));
+		bands = new Band[bandCount];
+		for (int b = 0; b < bandCount; b++) {
+			//spread the rows as evenly as possible, the first bands get one extra row if needed
+			int rowStart = 1 + (int) ((long) interior * b / bandCount);
+			int rowEnd = 1 + (int) ((long) interior * (b + 1) / bandCount);
+			bands[b] = new Band(rowStart, rowEnd);
+		}
+	}
+
+	/**
+	 * Parallel version of StencilKernel.velocity(...).
+	 */
+	public void velocity(double[] u, double[] velocity, int cols, double alpha, double deltaTime) {
+		run(u, velocity, cols, alpha, deltaTime, false);
+	}
+
+	/**
+	 * Parallel version of StencilKernel.step(...).
+	 */
+	public void step(double[] u, double[] next, int cols, double alpha, double deltaTime) {
+		step(StencilKernel::step, u, next, cols, alpha, deltaTime);
+	}
+
+	/**
+	 * Parallel version of kernel.step(...).
+	 */
+	public void step(StepKernel kernel, double[] u, double[] next, int cols, double alpha, double deltaTime) {
+		this.kernel = kernel;
+		run(u, next, cols, alpha, deltaTime, true);
+	}
+
+	/**
+	 * Parallel version of kernel.stepReduce(...). Every band reduces its own rows into its own
+	 * partial, the partials are merged in the order of the bands so the result does not depend on
+	 * which thread finished first.
+	 */
+	public void stepReduce(StepKernel kernel, double[] u, double[] next, int cols, double alpha, double deltaTime, double[] partial) {
+		this.kernel = kernel;
+		for (Band band : bands) {
+			band.partial[0] = Double.POSITIVE_INFINITY;
+			band.partial[1] = Double.NEGATIVE_INFINITY;
+			band.partial[2] = 0;
+		}
+		reduce = true;
+		run(u, next, cols, alpha, deltaTime, true);
+		reduce = false;
+		for (Band band : bands) {
+			partial[0] = Math.min(partial[0], band.partial[0]);
+			partial[1] = Math.max(partial[1], band.partial[1]);
+			partial[2] += band.partial[2];
+		}
+	}
+
+	/**
+	 * Run task on every band in parallel, for kernels that do not work on double[] (see FloatSolution).
+	 * Returns when all the bands are done.
+	 */
+	public void forEachBand(BandTask task) {
+		this.task = task;
+		root.reinitialize();
+		pool.invoke(root);
+		this.task = null;
+	}
+
+	public int getThreads() { return threads; }
+
+	/**
+	 * Stops the threads in the pool. The stepper can not be used afterwards.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	private void run(double[] u, double[] out, int cols, double alpha, double deltaTime, boolean fused) {
+		this.u = u;
+		this.out = out;
+		this.cols = cols;
+		this.alpha = alpha;
+		this.deltaTime = deltaTime;
+		this.fused = fused;
+		root.reinitialize();
+		pool.invoke(root);
+		//drop the references so that the buffers are not kept alive by the stepper
+		this.u = null;
+		this.out = null;
+	}
+
+	private class Root extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void compute() {
+			for (Band band : bands)
+				band.reinitialize();
+			invokeAll(bands);
+		}
+	}
+
+	private class Band extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int rowStart;
+		private final int rowEnd;
+
+		/**
+		 * Min, max and sum of the band for stepReduce(...).
+		 */
+		private final double[] partial = new double[3];
+
+		Band(int rowStart, int rowEnd) {
+			this.rowStart = rowStart;
+			this.rowEnd = rowEnd;
+		}
+
+		@Override
+		protected void compute() {
+			if (rowStart >= rowEnd) return;
+			if (task != null)
+				task.run(rowStart, rowEnd);
+			else if (reduce)
+				kernel.stepReduce(u, out, cols, alpha, deltaTime, rowStart, rowEnd, partial);
+			else if (fused)
+				kernel.step(u, out, cols, alpha, deltaTime, rowStart, rowEnd);
+			else
+				StencilKernel.velocity(u, out, cols, alpha, deltaTime, rowStart, rowEnd);
+		}
+	}
+}
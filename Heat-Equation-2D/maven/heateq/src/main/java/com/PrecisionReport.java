@@ -0,0 +1,93 @@
+package com;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * Compares FloatSolution with the double DOUBLE_BUFFER mode of NumericalSolution after the same amount
+ * of time steps. For every mesh size, amount of steps and precision it prints:
+ * 		- max error:	largest absolute difference from the double temperatures.
+ * 		- rel max:		max error divided by the largest double temperature.
+ * 		- rel L2:		L2 norm of the difference divided by the L2 norm of the double temperatures.
+ * 		- energy:		relative difference of the sum of the temperatures.
+ * 		- steps/sec:	throughput of the run, the double run is on the fp64 line.
+ *
+ * Usage: PrecisionReport [steps] [meshSize ...]
+ * Defaults to 10000 steps, reported after 10, 100, 1000 and 10000, and the mesh sizes 256 and 1024.
+ */
+public class PrecisionReport {
+
+	public static void main(String[] args) {
+		long maxSteps = 10000;
+		int[] meshSizes = { 256, 1024 };
+		if (args.length > 0)
+			maxSteps = Long.parseLong(args[0]);
+		if (args.length > 1) {
+			meshSizes = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++)
+				meshSizes[i - 1] = Integer.parseInt(args[i]);
+		}
+
+		final double alpha = 5;
+		final double deltaTime = 0.1;
+
+		System.out.printf("%-10s %8s %-8s %12s %12s %12s %12s %12s%n",
+				"mesh", "steps", "mode", "max error", "rel max", "rel L2", "energy", "steps/sec");
+		for (int size : meshSizes) {
+			SimpleMatrix initial = hotSquare(size);
+			NumericalSolution reference = new NumericalSolution(initial.copy(), alpha, NumericalSolution.Mode.DOUBLE_BUFFER);
+			FloatSolution single = new FloatSolution(initial, alpha, FloatSolution.Precision.SINGLE);
+			FloatSolution mixed = new FloatSolution(initial, alpha, FloatSolution.Precision.MIXED);
+			long done = 0;
+			for (long steps = 10; steps <= maxSteps; steps *= 10) {
+				long start = System.nanoTime();
+				reference.advance(steps - done, deltaTime);
+				double referenceRate = (steps - done) / ((System.nanoTime() - start) / 1e9);
+				start = System.nanoTime();
+				single.advance(steps - done, deltaTime);
+				double singleRate = (steps - done) / ((System.nanoTime() - start) / 1e9);
+				start = System.nanoTime();
+				mixed.advance(steps - done, deltaTime);
+				double mixedRate = (steps - done) / ((System.nanoTime() - start) / 1e9);
+				done = steps;
+
+				double[] expected = reference.getSolution().getDDRM().getData();
+				String mesh = size + "x" + size;
+				System.out.printf("%-10s %8d %-8s %12s %12s %12s %12s %12.1f%n", mesh, steps, "fp64", "-", "-", "-", "-", referenceRate);
+				print(mesh, steps, "SINGLE", expected, single, singleRate);
+				print(mesh, steps, "MIXED", expected, mixed, mixedRate);
+			}
+		}
+	}
+
+	/**
+	 * A hot square in the middle of a cold grid with the bound set to 0.
+	 */
+	private static SimpleMatrix hotSquare(int size) {
+		SimpleMatrix matrix = new SimpleMatrix(size, size);
+		for (int i = size / 4; i < 3 * size / 4; i++)
+			for (int j = size / 4; j < 3 * size / 4; j++)
+				matrix.set(i, j, 100);
+		return matrix;
+	}
+
+	private static void print(String mesh, long steps, String mode, double[] expected, FloatSolution solution, double rate) {
+		float[] actual = solution.getField();
+		double maxError = 0;
+		double max = 0;
+		double error2 = 0;
+		double norm2 = 0;
+		double energy = 0;
+		for (int pos = 0; pos < expected.length; pos++) {
+			double diff = actual[pos] - expected[pos];
+			maxError = Math.max(maxError, Math.abs(diff));
+			max = Math.max(max, Math.abs(expected[pos]));
+			error2 += diff * diff;
+			norm2 += expected[pos] * expected[pos];
+			energy += expected[pos];
+		}
+		System.out.printf("%-10s %8d %-8s %12.3e %12.3e %12.3e %12.3e %12.1f%n", mesh, steps, mode, maxError, maxError / max,
+				Math.sqrt(error2 / norm2), Math.abs(solution.getEnergy() - energy) / Math.abs(energy), rate);
+	}
+}
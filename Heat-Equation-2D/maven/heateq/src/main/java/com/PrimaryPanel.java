@@ -1,111 +1,107 @@
-package com;
-
-import java.awt.Color;
-import java.awt.Graphics;
-
-import javax.swing.JPanel;
-
-import org.ejml.simple.SimpleMatrix;
-
-/**
- * @author Marius
- * 
- * This is the primary panel where everything is drawn. The Drawer class creates a panel (this panel)
- * and draws everything that is on this panel.
- *
- */
-public class PrimaryPanel extends JPanel {
-	
-	/**
-	 * Compiler Warning if this is not present.
-	 */
-	private static final long serialVersionUID = 1L;
-
-	/**
-	 * Origin of the canvas that shows up on the screen.
-	 */
-	private final int m_ORIGINX, m_ORIGINY;
-	
-	/**
-	 * Scales a single pixel into a square with size PIXELSIZE by PIXELSIZE.
-	 */
-	private final int PIXELSIZE;
-	
-	/**
-	 * Contains the information about the solution that is to be drawn.
-	 */
-	private final NumericalSolution ns;
-
-	/*
-	* In order to make better use of the 0 to 255 grayscale values we do two things.
-	* First we scale all the values between 0 and 400. We use 400 because this allows
-	* for using the whole range of 0 to 255 a bit longer than starting at 255.
-	* Thereafter, we calculate the percentage of the current brightest pixel
-	* to the overall brighest pixel seen at the start of the simulation. Over time,
-	* will get less bright, thus the percentage smaller. This ensures that all pixels
-	* the brighest pixel given an iteratinon eventually reach 0, because
-	* without the percentage, when scaling the pixels between
-	* 0 and 255, there would always be a pixel with the value 255.
-	*/
-	private boolean first = true;
-	private double MAXIM;
-	
-	public PrimaryPanel(NumericalSolution ns, int ORIGINX, int ORIGINY, int PIXELSIZE) {
-		this.ns = ns;
-		m_ORIGINX = ORIGINX;
-		m_ORIGINY = ORIGINY;
-		this.PIXELSIZE = PIXELSIZE;
-	}
-	
-	/**
-	 * When drawing, note that the coordinate system is in "screen mode" / "matrix mode".
-	 * Thus, make sure to use minus when increasing and plus when decreasing when dealing
-	 * with the y-axis.
-	 */
-	@Override
-	protected void paintComponent(Graphics g) {
-		SimpleMatrix matrix = ns.getSolution();
-
-		// Get the element with the highest value (assumed to be positive)
-		double maxim = matrix.elementMax();
-
-		// If it is the first numerical solution, store the highest value temperature
-		if (first) {
-			MAXIM = maxim;
-			first = false;
-		}
-
-		// Calculate the percentage of the current highest temperature to the overall highest seen
-		double percentage = maxim / MAXIM;
-
-		// Scale every temperature between 0 and 400 for better visualization
-		double scaler = 400 / maxim;
-		
-		for (int i = 0; i < matrix.getNumRows(); i++) {
-			for (int j = 0; j < matrix.getNumCols(); j++) {
-				double val = matrix.get(i, j);
-				
-				// Scale value between 0 and 400
-				val *= scaler;
-				// Dim the pixel value depending on the brightest pixel
-				val *= percentage;
-
-				// Cast into integer
-				int integerVal = (int)val;
-				
-				//clamp values between 0 and 255 just in case some values are outside
-				if 		(integerVal > 255) integerVal = 255;
-				else if (integerVal < 0) 	integerVal = 0;
-				Color col = new Color(integerVal, integerVal, integerVal);
-				
-				//scale up pixels by pixelSize
-				g.setColor(col);
-				for (int k = 0; k < PIXELSIZE; k ++) {
-					for (int l = 0; l < PIXELSIZE; l ++) {
-						g.drawLine(m_ORIGINX + l + j * PIXELSIZE, m_ORIGINY - k - i * PIXELSIZE, m_ORIGINX + l + j * PIXELSIZE, m_ORIGINY - k - i * PIXELSIZE);
-					}
-				}
-			}
-		}
-	}
+package com;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import javax.swing.JPanel;
+
+/**
+ * @author Marius
+ * 
+ * This is the primary panel where everything is drawn. The Drawer class creates a panel (this panel)
+ * and draws everything that is on this panel.
+ *
+ */
+public class PrimaryPanel extends JPanel {
+	
+	/**
+	 * Compiler Warning if this is not present.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Origin of the canvas that shows up on the screen.
+	 */
+	private final int m_ORIGINX, m_ORIGINY;
+	
+	/**
+	 * Scales a single pixel into a square with size PIXELSIZE by PIXELSIZE.
+	 */
+	private final int PIXELSIZE;
+	
+	/**
+	 * Hands over the latest snapshot of the solution that is to be drawn.
+	 */
+	private final FrameExchange exchange;
+
+	/**
+	 * Turns the temperatures into grayscale pixels.
+	 */
+	private final GrayscaleMapping mapping = new GrayscaleMapping();
+	
+	/**
+	 * The solution is drawn into this image, one pixel per cell, which is then scaled up by PIXELSIZE
+	 * when drawn on the panel. The image is reused between frames.
+	 */
+	private BufferedImage image;
+	
+	/**
+	 * The data buffer of image.
+	 */
+	private int[] pixels;
+	
+	/**
+	 * Where the time of drawing is reported, null for no metrics.
+	 */
+	private final SolverMetrics metrics;
+	
+	public PrimaryPanel(FrameExchange exchange, int ORIGINX, int ORIGINY, int PIXELSIZE) {
+		this(exchange, null, ORIGINX, ORIGINY, PIXELSIZE);
+	}
+	
+	/**
+	 * Same as PrimaryPanel(exchange, ORIGINX, ORIGINY, PIXELSIZE) but the time of drawing a frame is
+	 * reported to metrics.
+	 */
+	public PrimaryPanel(FrameExchange exchange, SolverMetrics metrics, int ORIGINX, int ORIGINY, int PIXELSIZE) {
+		this.exchange = exchange;
+		this.metrics = metrics;
+		m_ORIGINX = ORIGINX;
+		m_ORIGINY = ORIGINY;
+		this.PIXELSIZE = PIXELSIZE;
+	}
+	
+	/**
+	 * When drawing, note that the coordinate system is in "screen mode" / "matrix mode".
+	 * Thus, make sure to use minus when increasing and plus when decreasing when dealing
+	 * with the y-axis.
+	 */
+	@Override
+	protected void paintComponent(Graphics g) {
+		long start = metrics != null ? metrics.start() : 0;
+		// Never blocks, the simulation keeps running while the frame is drawn
+		Frame frame = exchange.latest();
+		double[] data = frame.getData();
+		int rows = frame.getRows();
+		int cols = frame.getCols();
+
+		// The highest value (assumed to be positive) was found by the solver during the time step
+		double maxim = frame.getStats().getMax();
+
+		if (image == null || image.getWidth() != cols || image.getHeight() != rows) {
+			image = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_RGB);
+			pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		}
+		mapping.toPixels(data, rows, cols, maxim, pixels);
+
+		// Row 0 is drawn at the origin and the following rows above it
+		Graphics2D g2 = (Graphics2D) g;
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		g2.drawImage(image, m_ORIGINX, m_ORIGINY - rows * PIXELSIZE + 1, cols * PIXELSIZE, rows * PIXELSIZE, null);
+		if (metrics != null)
+			metrics.record(SolverMetrics.Phase.RENDER, start);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,196 @@
+package com;
+
+import java.util.List;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.data.DMatrixSparseTriplet;
+import org.ejml.interfaces.linsol.LinearSolverSparse;
+import org.ejml.ops.DConvertMatrixStruct;
+import org.ejml.sparse.FillReducing;
+import org.ejml.sparse.csc.factory.LinearSolverFactory_DSCC;
+
+/**
+ * @author Marius
+ *
+ * Surface through the input points made of one radial basis function per point. Unlike the Polynomial,
+ * which needs as many terms as points and becomes useless for more than a few dozen points, this surface
+ * works for thousands of points (e.g. measured by sensors).
+ *
+ * The basis function is Wendland's compactly supported function
+ * 		phi(r) = (1 - r)^4 * (4r + 1) for r < 1, 0 otherwise, with r = distance / radius.
+ * Every point only influences the points closer than radius, so the linear system for the weights is
+ * sparse. The matrix is symmetric positive definite, so it is solved with a sparse Cholesky decomposition.
+ * The points are sorted by the grid cell they are in, which keeps the nonzeros close to the diagonal
+ * and the fill-in of the decomposition small.
+ *
+ * Neighbors are found with a grid of cells of size radius, so a point only has to be compared to the
+ * points in the 3x3 cells around it. Far away from all the points the surface is 0.
+ */
+public class RadialBasisSurface implements Surface {
+
+	/**
+	 * Wanted amount of points inside the radius of a point when the radius is chosen automatically.
+	 */
+	private static final int NEIGHBORS = 20;
+
+	private final double radius;
+	private final double radius2;
+
+	/**
+	 * Positions and weights of the points, sorted by cell.
+	 */
+	private final double[] xs;
+	private final double[] ys;
+	private final double[] weights;
+
+	/**
+	 * Grid of cells of size radius. The points in cell c are cellStart[c] to cellStart[c + 1].
+	 */
+	private final double minX;
+	private final double minY;
+	private final int gridCols;
+	private final int gridRows;
+	private final int[] cellStart;
+
+	/**
+	 * Same as RadialBasisSurface(points, radius) with a radius giving each point about NEIGHBORS
+	 * neighbors on average.
+	 */
+	public RadialBasisSurface(List<Vertex> points) {
+		this(points, defaultRadius(points));
+	}
+
+	/**
+	 * Fit the surface to the points.
+	 * @param points	Points the surface goes through, no two at the same position.
+	 * @param radius	Support radius of the basis functions, in mesh cells.
+	 */
+	public RadialBasisSurface(List<Vertex> points, double radius) {
+		if (points.isEmpty())
+			throw new IllegalArgumentException("The list containing points is empty!");
+		if (!(radius > 0))
+			throw new IllegalArgumentException("Radius must be positive!");
+		this.radius = radius;
+		radius2 = radius * radius;
+		int n = points.size();
+
+		//put the points into the grid, counting sort by cell
+		double lowX = Double.POSITIVE_INFINITY, lowY = Double.POSITIVE_INFINITY;
+		double highX = Double.NEGATIVE_INFINITY, highY = Double.NEGATIVE_INFINITY;
+		for (Vertex point : points) {
+			lowX = Math.min(lowX, point.getX());
+			lowY = Math.min(lowY, point.getY());
+			highX = Math.max(highX, point.getX());
+			highY = Math.max(highY, point.getY());
+		}
+		minX = lowX;
+		minY = lowY;
+		gridCols = (int) ((highX - lowX) / radius) + 1;
+		gridRows = (int) ((highY - lowY) / radius) + 1;
+		cellStart = new int[gridCols * gridRows + 1];
+		int[] cells = new int[n];
+		for (int k = 0; k < n; k++) {
+			cells[k] = cell(points.get(k).getX(), points.get(k).getY());
+			cellStart[cells[k] + 1]++;
+		}
+		for (int c = 0; c < gridCols * gridRows; c++)
+			cellStart[c + 1] += cellStart[c];
+		int[] next = cellStart.clone();
+		xs = new double[n];
+		ys = new double[n];
+		double[] zs = new double[n];
+		for (int k = 0; k < n; k++) {
+			int pos = next[cells[k]]++;
+			Vertex point = points.get(k);
+			xs[pos] = point.getX();
+			ys[pos] = point.getY();
+			zs[pos] = point.getZ();
+		}
+
+		//the interpolation matrix, only the pairs closer than radius are nonzero
+		DMatrixSparseTriplet triplet = new DMatrixSparseTriplet(n, n, n * NEIGHBORS);
+		for (int k = 0; k < n; k++) {
+			int cx = (int) ((xs[k] - minX) / radius);
+			int cy = (int) ((ys[k] - minY) / radius);
+			for (int gy = Math.max(cy - 1, 0); gy <= Math.min(cy + 1, gridRows - 1); gy++) {
+				for (int gx = Math.max(cx - 1, 0); gx <= Math.min(cx + 1, gridCols - 1); gx++) {
+					int c = gy * gridCols + gx;
+					for (int l = cellStart[c]; l < cellStart[c + 1]; l++) {
+						double dx = xs[k] - xs[l];
+						double dy = ys[k] - ys[l];
+						double d2 = dx * dx + dy * dy;
+						if (d2 < radius2)
+							triplet.addItem(k, l, wendland(Math.sqrt(d2) / radius));
+					}
+				}
+			}
+		}
+		DMatrixSparseCSC matrix = DConvertMatrixStruct.convert(triplet, (DMatrixSparseCSC) null);
+
+		LinearSolverSparse<DMatrixSparseCSC, DMatrixRMaj> solver = LinearSolverFactory_DSCC.cholesky(FillReducing.NONE);
+		if (!solver.setA(matrix))
+			throw new IllegalArgumentException("Could not fit the surface, are two points at the same position?");
+		DMatrixRMaj b = DMatrixRMaj.wrap(n, 1, zs);
+		DMatrixRMaj x = new DMatrixRMaj(n, 1);
+		solver.solve(b, x);
+		weights = x.getData();
+	}
+
+	@Override
+	public double valueAt(double x, double y) {
+		int cx = (int) Math.floor((x - minX) / radius);
+		int cy = (int) Math.floor((y - minY) / radius);
+		double val = 0;
+		for (int gy = Math.max(cy - 1, 0); gy <= Math.min(cy + 1, gridRows - 1); gy++) {
+			for (int gx = Math.max(cx - 1, 0); gx <= Math.min(cx + 1, gridCols - 1); gx++) {
+				int c = gy * gridCols + gx;
+				for (int l = cellStart[c]; l < cellStart[c + 1]; l++) {
+					double dx = x - xs[l];
+					double dy = y - ys[l];
+					double d2 = dx * dx + dy * dy;
+					if (d2 < radius2)
+						val += weights[l] * wendland(Math.sqrt(d2) / radius);
+				}
+			}
+		}
+		return val;
+	}
+
+	public double getRadius() { return radius; }
+
+	public int getSize() { return xs.length; }
+
+	/**
+	 * Wendland's function, r is the distance divided by the radius.
+	 */
+	static double wendland(double r) {
+		if (r >= 1) return 0;
+		double t = 1 - r;
+		double t2 = t * t;
+		return t2 * t2 * (4 * r + 1);
+	}
+
+	/**
+	 * Radius that gives every point about NEIGHBORS points inside it, if the points are spread evenly
+	 * over their bounding box. At least one mesh cell.
+	 */
+	static double defaultRadius(List<Vertex> points) {
+		double lowX = Double.POSITIVE_INFINITY, lowY = Double.POSITIVE_INFINITY;
+		double highX = Double.NEGATIVE_INFINITY, highY = Double.NEGATIVE_INFINITY;
+		for (Vertex point : points) {
+			lowX = Math.min(lowX, point.getX());
+			lowY = Math.min(lowY, point.getY());
+			highX = Math.max(highX, point.getX());
+			highY = Math.max(highY, point.getY());
+		}
+		double area = (highX - lowX + 1) * (highY - lowY + 1);
+		return Math.max(Math.sqrt(NEIGHBORS * area / (Math.PI * points.size())), 1);
+	}
+
+	private int cell(double x, double y) {
+		int cx = Math.min((int) ((x - minX) / radius), gridCols - 1);
+		int cy = Math.min((int) ((y - minY) / radius), gridRows - 1);
+		return cy * gridCols + cx;
+	}
+}
@@ -0,0 +1,117 @@
+package com;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * Prints how many time steps per second the DOUBLE_BUFFER mode manages for different amounts
+ * of threads and mesh sizes. Every parallel run is also compared with the single threaded run,
+ * the results should be identical.
+ *
+ * Usage: ScalingReport [maxThreads] [meshSize ...]
+ * Defaults to all available processors and the mesh sizes 256, 512, 1024, 2048 and 4096.
+ * The largest mesh needs about 300 MB of heap.
+ */
+public class ScalingReport {
+
+	/**
+	 * Every measurement runs for at least this many milliseconds.
+	 */
+	private static final long MEASURE_MILLIS = 1000;
+
+	/**
+	 * Amount of steps compared between the single threaded and the parallel run.
+	 */
+	private static final int VERIFY_STEPS = 5;
+
+	public static void main(String[] args) {
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		int[] meshSizes = { 256, 512, 1024, 2048, 4096 };
+		if (args.length > 0)
+			maxThreads = Integer.parseInt(args[0]);
+		if (args.length > 1) {
+			meshSizes = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++)
+				meshSizes[i - 1] = Integer.parseInt(args[i]);
+		}
+
+		final double alpha = 5;
+		final double deltaTime = 0.1;
+
+		System.out.printf("%-10s %-8s %14s %10s %10s%n", "mesh", "threads", "steps/sec", "speedup", "identical");
+		for (int size : meshSizes) {
+			double[] initial = initialValues(size);
+			SimpleMatrix reference = run(initial, size, alpha, deltaTime, 1, VERIFY_STEPS);
+			double serial = 0;
+			for (int threads : threadCounts(maxThreads)) {
+				boolean identical = Arrays.equals(reference.getDDRM().getData(), run(initial, size, alpha, deltaTime, threads, VERIFY_STEPS).getDDRM().getData());
+				double stepsPerSecond = measure(initial, size, alpha, deltaTime, threads);
+				if (threads == 1) serial = stepsPerSecond;
+				System.out.printf("%-10s %-8d %14.1f %10.2f %10s%n", size + "x" + size, threads, stepsPerSecond, stepsPerSecond / serial, identical);
+			}
+		}
+	}
+
+	/**
+	 * 1, 2, 4, ... up to maxThreads, maxThreads is always included.
+	 */
+	private static List<Integer> threadCounts(int maxThreads) {
+		List<Integer> counts = new ArrayList<>();
+		for (int threads = 1; threads < maxThreads; threads *= 2)
+			counts.add(threads);
+		counts.add(maxThreads);
+		return counts;
+	}
+
+	/**
+	 * A hot square in the middle of a cold grid with the bound set to 0.
+	 */
+	private static double[] initialValues(int size) {
+		double[] data = new double[size * size];
+		for (int i = size / 4; i < 3 * size / 4; i++)
+			for (int j = size / 4; j < 3 * size / 4; j++)
+				data[i * size + j] = 100;
+		return data;
+	}
+
+	private static SimpleMatrix run(double[] initial, int size, double alpha, double deltaTime, int threads, int steps) {
+		NumericalSolution ns = create(initial, size, alpha, threads);
+		for (int step = 0; step < steps; step++) {
+			ns.updateVelocity(deltaTime);
+			ns.updateData();
+		}
+		ns.shutdown();
+		return ns.getSolution();
+	}
+
+	private static double measure(double[] initial, int size, double alpha, double deltaTime, int threads) {
+		NumericalSolution ns = create(initial, size, alpha, threads);
+		//warm up
+		for (int step = 0; step < 10; step++) {
+			ns.updateVelocity(deltaTime);
+			ns.updateData();
+		}
+		long steps = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			ns.updateVelocity(deltaTime);
+			ns.updateData();
+			steps++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < MEASURE_MILLIS * 1_000_000L);
+		ns.shutdown();
+		return steps / (elapsed / 1e9);
+	}
+
+	private static NumericalSolution create(double[] initial, int size, double alpha, int threads) {
+		SimpleMatrix matrix = new SimpleMatrix(size, size);
+		System.arraycopy(initial, 0, matrix.getDDRM().getData(), 0, initial.length);
+		return new NumericalSolution(matrix, alpha, NumericalSolution.Mode.DOUBLE_BUFFER, threads);
+	}
+}
@@ -0,0 +1,128 @@
+package com;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author Marius
+ *
+ * Advances the solution on its own thread and publishes a snapshot of the temperatures to a
+ * FrameExchange after every time step. The thread never waits for the renderer. Every frame is drawn
+ * scaled by its highest temperature, so the solution calculates the stats of the temperatures during the
+ * time step (see NumericalSolution.setReductions(...)), they are published with the snapshot and reported
+ * to the metrics.
+ *
+ * The thread either runs as fast as it can or takes one time step per given interval, which is
+ * used when animating so that the animation does not finish in the blink of an eye.
+ */
+public class SimulationThread extends Thread {
+
+	private final NumericalSolution ns;
+
+	private final TimeStepController controller;
+
+	private final FrameExchange exchange;
+
+	private final double deltaTime;
+
+	/**
+	 * Time between two time steps in nanoseconds, 0 to run as fast as possible.
+	 */
+	private final long stepInterval;
+
+	private volatile boolean running = true;
+
+	/**
+	 * Streams a snapshot every exportEvery time steps, null for no export.
+	 */
+	private SnapshotWriter export;
+	private long exportEvery;
+
+	/**
+	 * Where the time of publishing is reported, null for no metrics.
+	 */
+	private SolverMetrics metrics;
+
+	/**
+	 * @param ns			Solution to advance.
+	 * @param controller	Controller advancing ns.
+	 * @param exchange		Where the snapshots are published.
+	 * @param deltaTime		Time step in seconds used to obtain numerical solution.
+	 * @param stepInterval	Time in seconds between two time steps, 0 to run as fast as possible.
+	 */
+	public SimulationThread(NumericalSolution ns, TimeStepController controller, FrameExchange exchange, double deltaTime, double stepInterval) {
+		super("Simulation");
+		this.ns = ns;
+		this.controller = controller;
+		this.exchange = exchange;
+		this.deltaTime = deltaTime;
+		this.stepInterval = (long) (stepInterval * 1e9);
+		ns.setReductions(true);
+		setDaemon(true);
+	}
+
+	/**
+	 * Publish the current temperatures without taking a time step.
+	 */
+	public void publish() {
+		long start = metrics != null ? metrics.start() : 0;
+		exchange.back().copyFrom(ns.getSolution(), ns.getStats(), controller.getSteps(), controller.getTime());
+		exchange.publish();
+		if (metrics != null)
+			metrics.record(SolverMetrics.Phase.PUBLISH, start);
+	}
+
+	/**
+	 * Stream a snapshot to writer every exportEvery time steps, see SnapshotWriter. Snapshots are dropped
+	 * when the writer is behind (SnapshotWriter.offer), so the window never waits for the disk. Must be
+	 * called before the thread is started, the writer has to be closed by the caller.
+	 */
+	public void setExport(SnapshotWriter writer, long exportEvery) {
+		if (writer != null && exportEvery < 1)
+			throw new IllegalArgumentException("Amount of time steps between two snapshots must be at least 1!");
+		this.export = writer;
+		this.exportEvery = exportEvery;
+	}
+
+	/**
+	 * Report the time of publishing, the dropped frames and snapshots and the temperatures to metrics.
+	 * The time steps are reported by the NumericalSolution, see NumericalSolution.setMetrics(...).
+	 * Must be called before the thread is started.
+	 */
+	public void setMetrics(SolverMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Stop after the current time step.
+	 */
+	public void stopSimulation() {
+		running = false;
+	}
+
+	@Override
+	public void run() {
+		if (metrics != null) {
+			metrics.watchThread(this);
+			metrics.setExchange(exchange);
+			metrics.setSnapshots(export);
+		}
+		long next = System.nanoTime();
+		while (running) {
+			controller.step(deltaTime);
+			publish();
+			if (metrics != null)
+				metrics.field(ns.getStats());
+			if (export != null && controller.getSteps() % exportEvery == 0)
+				export.offer(ns.getSolution(), export.usesStats() ? ns.getStats() : null, controller.getSteps(), controller.getTime());
+			if (stepInterval > 0) {
+				next += stepInterval;
+				//do not try to catch up if a time step took longer than the interval
+				if (next < System.nanoTime()) next = System.nanoTime();
+				long wait;
+				while (running && (wait = next - System.nanoTime()) > 0)
+					LockSupport.parkNanos(wait);
+			}
+		}
+		ns.shutdown();
+	}
+}
@@ -0,0 +1,69 @@
+package com;
+
+/**
+ * @author Marius
+ *
+ * Discrete sine transform (DST-I) of real sequences of length n,
+ *
+ * 		X_k = sum_{j=1..n} x_j * sin(pi j k / (n + 1)),	k = 1..n
+ *
+ * The sine functions are the eigenvectors of the 1D second difference with the bound fixed at 0, which is
+ * what makes the transform useful for the heat equation, see SpectralSolution. Transforming twice gives
+ * the sequence back multiplied by (n + 1) / 2.
+ *
+ * The sequence is extended to the odd sequence 0, x_1, ..., x_n, 0, -x_n, ..., -x_1 of length 2(n + 1),
+ * whose Fourier transform is -2i times the sine transform. The Fourier transform of a real sequence wastes
+ * the imaginary part, so two sequences are put in the real and imaginary part of one transform.
+ *
+ * Not thread safe, see FFT.
+ */
+public final class SineTransform {
+
+	private final int n;
+
+	private final FFT fft;
+
+	private final double[] re;
+	private final double[] im;
+
+	public SineTransform(int n) {
+		if (n < 1)
+			throw new IllegalArgumentException("Length must be at least 1!");
+		this.n = n;
+		fft = new FFT(2 * (n + 1));
+		re = new double[2 * (n + 1)];
+		im = new double[2 * (n + 1)];
+	}
+
+	public int getLength() { return n; }
+
+	/**
+	 * Transform count sequences stored in data in place. Value j of sequence s is at
+	 * data[offset + s * step + j * stride].
+	 */
+	public void transform(double[] data, int offset, int stride, int step, int count) {
+		int size = 2 * (n + 1);
+		for (int s = 0; s < count; s += 2) {
+			int a = offset + s * step;
+			int b = a + step;
+			boolean pair = s + 1 < count;
+			re[0] = im[0] = 0;
+			re[n + 1] = im[n + 1] = 0;
+			for (int j = 0; j < n; j++) {
+				double x = data[a + j * stride];
+				double y = pair ? data[b + j * stride] : 0;
+				re[j + 1] = x;
+				im[j + 1] = y;
+				re[size - 1 - j] = -x;
+				im[size - 1 - j] = -y;
+			}
+			fft.transform(re, im);
+			//Z = A + iB with A = -2i Sa and B = -2i Sb
+			for (int k = 0; k < n; k++) {
+				data[a + k * stride] = -im[k + 1] / 2;
+				if (pair)
+					data[b + k * stride] = re[k + 1] / 2;
+			}
+		}
+	}
+}
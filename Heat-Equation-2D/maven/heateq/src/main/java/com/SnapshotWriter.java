@@ -0,0 +1,309 @@
+package com;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * Streams snapshots of the temperatures to disk on a background thread, e.g. to analyze how the
+ * temperatures change over time.
+ *
+ * The snapshots are copied into a small pool of reused Frames and handed to the writer thread through
+ * a bounded queue. When all the frames are still waiting to be written (the disk is slower than the
+ * simulation) there are two choices:
+ * 		- offer(...) drops the snapshot and counts it, so a slow disk never slows down the solver. This
+ * 		  is what the window and batch runs use.
+ * 		- put(...) waits for a frame, so every snapshot is written but the solver runs at the speed of
+ * 		  the disk. Only used when asked for (HeadlessHeat --export-wait), as it gives up that guarantee.
+ *
+ * Formats:
+ * 		- RAW_F64:		Every frame as doubles.
+ * 		- RAW_F32:		Every frame as floats, half the size.
+ * 		- DELTA:		Every frame XOR the previous frame (bit by bit) compressed with Deflater. Lossless,
+ * 						and small since most bits of a temperature hardly change between two frames.
+ * 		- QUANTIZED:	Every frame as 16 bit values between the lowest and highest temperature of the frame.
+ * 		- PNG, GIF:		One grayscale image per frame (snapshot_00000100.png, ...), see GrayscaleMapping.
+ *
+ * The RAW_F64, RAW_F32, DELTA and QUANTIZED frames are written to a single file, snapshots.heqs (big-endian):
+ * 		int MAGIC, int VERSION, int format, int rows, int cols,
+ * 		then per frame: long step, double time, payload.
+ * The DELTA payload starts with the compressed length as an int, the QUANTIZED payload with the lowest
+ * and highest temperature as doubles.
+ */
+public class SnapshotWriter implements AutoCloseable {
+
+	public enum Format { RAW_F64, RAW_F32, DELTA, QUANTIZED, PNG, GIF }
+
+	private static final int MAGIC = 0x48455153; // "HEQS"
+	private static final int VERSION = 1;
+
+	/**
+	 * Put in the queue to stop the writer thread.
+	 */
+	private static final Frame END = new Frame(0, 0);
+
+	private final Path dir;
+	private final Format format;
+	private final int rows;
+	private final int cols;
+
+	/**
+	 * Frames that are not in use and frames waiting to be written.
+	 */
+	private final BlockingQueue<Frame> free;
+	private final BlockingQueue<Frame> pending;
+
+	private final Thread thread;
+
+	/**
+	 * Only used by the writer thread.
+	 */
+	private DataOutputStream stream;
+	private long[] previous;
+	private byte[] bytes;
+	private byte[] compressed;
+	private Deflater deflater;
+	private GrayscaleMapping mapping;
+	private BufferedImage image;
+
+	private volatile long written = 0;
+	private volatile long dropped = 0;
+	private volatile IOException error;
+
+	/**
+	 * @param dir			Directory the snapshots are written to, created if needed.
+	 * @param format		Format of the snapshots.
+	 * @param rows			Amount of rows in the mesh.
+	 * @param cols			Amount of columns in the mesh.
+	 * @param queueSize		Amount of snapshots that can wait to be written before offer(...) drops them
+	 * 						and put(...) waits.
+	 */
+	public SnapshotWriter(Path dir, Format format, int rows, int cols, int queueSize) throws IOException {
+		if (queueSize < 1)
+			throw new IllegalArgumentException("Queue size must be at least 1!");
+		this.dir = dir;
+		this.format = format;
+		this.rows = rows;
+		this.cols = cols;
+		Files.createDirectories(dir);
+		free = new ArrayBlockingQueue<>(queueSize);
+		pending = new ArrayBlockingQueue<>(queueSize + 1);
+		for (int i = 0; i < queueSize; i++)
+			free.add(new Frame(rows, cols));
+
+		if (format == Format.PNG || format == Format.GIF) {
+			mapping = new GrayscaleMapping();
+			image = new BufferedImage(cols, rows, BufferedImage.TYPE_BYTE_GRAY);
+		}
+		else {
+			stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dir.resolve("snapshots.heqs")), 1 << 16));
+			stream.writeInt(MAGIC);
+			stream.writeInt(VERSION);
+			stream.writeInt(format.ordinal());
+			stream.writeInt(rows);
+			stream.writeInt(cols);
+			if (format == Format.DELTA) {
+				previous = new long[rows * cols];
+				bytes = new byte[rows * cols * Long.BYTES];
+				compressed = new byte[bytes.length + 64];
+				deflater = new Deflater(Deflater.BEST_SPEED);
+			}
+		}
+
+		thread = new Thread(this::writeFrames, "Snapshot writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Copy the temperatures and write them in the background. Never waits for the disk.
+	 * @param field		Current temperatures, including the bound.
+	 * @param stats		Stats of the temperatures, see NumericalSolution.getStats(). If they are null
+	 * 					or NaN the writer thread scans the frame when the format needs them.
+	 * @param step		Amount of time steps taken.
+	 * @param time		Simulated time in seconds.
+	 * @return			False if the snapshot was dropped because the writer is behind.
+	 */
+	public boolean offer(SimpleMatrix field, FieldStats stats, long step, double time) {
+		Frame frame = free.poll();
+		if (frame == null) {
+			dropped++;
+			return false;
+		}
+		frame.copyFrom(field, stats, step, time);
+		pending.add(frame);
+		return true;
+	}
+
+	/**
+	 * Same as offer(...) but waits for the writer instead of dropping the snapshot when it is behind.
+	 * @throws IOException	An error that happened while writing an earlier snapshot, or the writer thread
+	 * 						stopped, so a run neither goes on without its snapshots nor waits forever.
+	 */
+	public void put(SimpleMatrix field, FieldStats stats, long step, double time) throws IOException {
+		Frame frame;
+		try {
+			while ((frame = free.poll(100, TimeUnit.MILLISECONDS)) == null) {
+				if (error != null)
+					throw error;
+				if (!thread.isAlive())
+					throw new IOException("The snapshot writer stopped!");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the snapshot writer");
+		}
+		if (error != null) {
+			free.add(frame);
+			throw error;
+		}
+		frame.copyFrom(field, stats, step, time);
+		pending.add(frame);
+	}
+
+	/**
+	 * Write the snapshots that are still waiting and close the files.
+	 * @throws IOException	The first error that happened while writing.
+	 */
+	@Override
+	public void close() throws IOException {
+		pending.add(END);
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (stream != null)
+			stream.close();
+		if (deflater != null)
+			deflater.end();
+		if (error != null)
+			throw error;
+	}
+
+	public long getWritten() { return written; }
+
+	/**
+	 * Amount of snapshots that were dropped because the writer was behind.
+	 */
+	public long getDropped() { return dropped; }
+
+	public Format getFormat() { return format; }
+
+	/**
+	 * True if the format needs the stats of the frames: QUANTIZED, PNG and GIF.
+	 */
+	public boolean usesStats() {
+		return format == Format.QUANTIZED || format == Format.PNG || format == Format.GIF;
+	}
+
+	private void writeFrames() {
+		while (true) {
+			Frame frame;
+			try {
+				frame = pending.take();
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			if (frame == END)
+				return;
+			//after an error the frames are only recycled
+			if (error == null) {
+				try {
+					write(frame);
+					written++;
+				}
+				catch (IOException e) {
+					error = e;
+				}
+				catch (RuntimeException e) {
+					//e.g. from ImageIO, the thread has to keep recycling the frames
+					error = new IOException("Could not write snapshot " + frame.getStep(), e);
+				}
+			}
+			free.add(frame);
+		}
+	}
+
+	private void write(Frame frame) throws IOException {
+		double[] data = frame.getData();
+		//stats that were not handed over are calculated here, on the writer thread
+		FieldStats stats = frame.getStats();
+		if (usesStats() && (Double.isNaN(stats.getMin()) || Double.isNaN(stats.getMax())))
+			stats.scan(data, rows, cols);
+		if (format == Format.PNG || format == Format.GIF) {
+			double maxim = Math.max(0, stats.getMax());
+			byte[] gray = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			mapping.toGray(data, rows, cols, maxim, gray);
+			String type = format == Format.PNG ? "png" : "gif";
+			Path file = dir.resolve(String.format("snapshot_%08d.%s", frame.getStep(), type));
+			if (!ImageIO.write(image, type, file.toFile()))
+				throw new IOException("No image writer for " + type);
+			return;
+		}
+
+		stream.writeLong(frame.getStep());
+		stream.writeDouble(frame.getTime());
+		switch (format) {
+		case RAW_F64:
+			for (double val : data)
+				stream.writeDouble(val);
+			break;
+		case RAW_F32:
+			for (double val : data)
+				stream.writeFloat((float) val);
+			break;
+		case DELTA:
+			for (int i = 0, pos = 0; i < data.length; i++) {
+				long bits = Double.doubleToRawLongBits(data[i]);
+				long delta = bits ^ previous[i];
+				previous[i] = bits;
+				for (int shift = 56; shift >= 0; shift -= 8)
+					bytes[pos++] = (byte) (delta >>> shift);
+			}
+			deflater.reset();
+			deflater.setInput(bytes);
+			deflater.finish();
+			//the compressed frame is written after its length, so it is compressed into a separate buffer first
+			int length = 0;
+			while (!deflater.finished()) {
+				if (length == compressed.length)
+					compressed = Arrays.copyOf(compressed, compressed.length * 2);
+				length += deflater.deflate(compressed, length, compressed.length - length);
+			}
+			stream.writeInt(length);
+			stream.write(compressed, 0, length);
+			break;
+		case QUANTIZED:
+			double min = stats.getMin();
+			double max = stats.getMax();
+			stream.writeDouble(min);
+			stream.writeDouble(max);
+			double scale = max > min ? 65535 / (max - min) : 0;
+			for (double val : data)
+				stream.writeShort((int) Math.round((val - min) * scale));
+			break;
+		default:
+			throw new IllegalStateException("Unknown format " + format);
+		}
+	}
+}
@@ -0,0 +1,394 @@
+package com;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * @author Marius
+ *
+ * Measures where the time of a simulation goes. The solver, the simulation thread and the panel report to
+ * it (see the setMetrics(...) methods) and it collects:
+ * 		- the amount of time steps and the time steps per second
+ * 		- a latency histogram for each Phase
+ * 		- the bytes allocated per second by the watched threads
+ * 		- frames the renderer never showed (FrameExchange) and snapshots dropped by a SnapshotWriter
+ * 		- the smallest and largest temperature and the energy (sum of the temperatures inside the bound)
+ * 		  of the last field reported
+ *
+ * The metrics can be read through JMX after register(...) and printed periodically with startLog(...).
+ *
+ * Nothing is measured while the metrics are disabled: start() returns 0 without reading the clock and
+ * every other call returns right away. Code that is not given a SolverMetrics only checks for null.
+ *
+ * The histograms have one bucket per power of two nanoseconds, so recording a latency is a few
+ * instructions and percentiles are exact to a factor of two (the upper end of the bucket is reported).
+ */
+public class SolverMetrics implements SolverMetricsMBean, AutoCloseable {
+
+	/**
+	 * Parts of a time step:
+	 * 		- STENCIL:	calculating the new temperatures (updateVelocity, or a tiled pass in advance)
+	 * 		- UPDATE:	adding them to or swapping them with the current temperatures (updateData)
+	 * 		- PUBLISH:	copying the temperatures to a Frame for the renderer
+	 * 		- RENDER:	drawing a frame on the panel
+	 */
+	public enum Phase { STENCIL, UPDATE, PUBLISH, RENDER }
+
+	private static final int BUCKETS = 64;
+
+	/**
+	 * Rates are measured over at least this many nanoseconds.
+	 */
+	private static final long RATE_WINDOW = 250_000_000L;
+
+	private static final class Histogram {
+		final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+		final AtomicLong total = new AtomicLong();
+		final AtomicLong max = new AtomicLong();
+
+		void add(long nanos) {
+			counts.getAndIncrement(63 - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+			total.addAndGet(nanos);
+			if (nanos > max.get())
+				max.set(nanos);
+		}
+
+		long count() {
+			long count = 0;
+			for (int b = 0; b < BUCKETS; b++)
+				count += counts.get(b);
+			return count;
+		}
+
+		/**
+		 * Upper end of the bucket containing the given percentile, in nanoseconds.
+		 */
+		double percentile(double percentile) {
+			long count = count();
+			if (count == 0) return 0;
+			long rank = (long) Math.ceil(percentile / 100 * count);
+			long seen = 0;
+			for (int b = 0; b < BUCKETS; b++) {
+				seen += counts.get(b);
+				if (seen >= Math.max(rank, 1))
+					return Math.min(Math.pow(2, b + 1), max.get());
+			}
+			return max.get();
+		}
+
+		void reset() {
+			for (int b = 0; b < BUCKETS; b++)
+				counts.set(b, 0);
+			total.set(0);
+			max.set(0);
+		}
+	}
+
+	private volatile boolean enabled = true;
+
+	private final Histogram[] histograms = new Histogram[Phase.values().length];
+
+	private final AtomicLong steps = new AtomicLong();
+
+	private volatile double minTemperature = Double.NaN;
+	private volatile double maxTemperature = Double.NaN;
+	private volatile double energy = Double.NaN;
+
+	/**
+	 * Sources of dropped frames and snapshots, null if there are none.
+	 */
+	private volatile FrameExchange exchange;
+	private volatile SnapshotWriter snapshots;
+
+	/**
+	 * Ids of the threads whose allocations are measured.
+	 */
+	private volatile long[] threads = new long[0];
+
+	private final com.sun.management.ThreadMXBean threadBean;
+
+	/**
+	 * Start of the current rate window and the rates of the last whole window.
+	 */
+	private long windowStart;
+	private long windowSteps;
+	private long windowBytes;
+	private double stepsPerSecond = 0;
+	private double allocationRate = 0;
+
+	private ObjectName name;
+
+	private ScheduledExecutorService log;
+
+	public SolverMetrics() {
+		for (Phase phase : Phase.values())
+			histograms[phase.ordinal()] = new Histogram();
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean sunBean = null;
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (!sunBean.isThreadAllocatedMemorySupported())
+				sunBean = null;
+			else if (!sunBean.isThreadAllocatedMemoryEnabled())
+				sunBean.setThreadAllocatedMemoryEnabled(true);
+		}
+		threadBean = sunBean;
+		windowStart = System.nanoTime();
+	}
+
+	/**
+	 * Start of a phase, pass the result to record(...). 0 when disabled.
+	 */
+	public long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * End of a phase.
+	 * @param start		The value start() returned when the phase began.
+	 */
+	public void record(Phase phase, long start) {
+		if (start != 0)
+			histograms[phase.ordinal()].add(System.nanoTime() - start);
+	}
+
+	/**
+	 * Count time steps.
+	 */
+	public void steps(long count) {
+		if (enabled)
+			steps.addAndGet(count);
+	}
+
+	/**
+	 * Take the min, max and energy of the field, as calculated by the solver (see FieldStats).
+	 */
+	public void field(FieldStats stats) {
+		if (!enabled) return;
+		minTemperature = stats.getMin();
+		maxTemperature = stats.getMax();
+		energy = stats.getEnergy();
+	}
+
+	/**
+	 * Count the frames the renderer never showed.
+	 */
+	public void setExchange(FrameExchange exchange) {
+		this.exchange = exchange;
+	}
+
+	/**
+	 * Count the snapshots dropped by the writer.
+	 */
+	public void setSnapshots(SnapshotWriter snapshots) {
+		this.snapshots = snapshots;
+	}
+
+	/**
+	 * Add the thread to the threads whose allocations are measured.
+	 */
+	public synchronized void watchThread(Thread thread) {
+		long[] ids = Arrays.copyOf(threads, threads.length + 1);
+		ids[threads.length] = thread.getId();
+		//only count what the thread allocates from now on
+		if (threadBean != null)
+			windowBytes += Math.max(threadBean.getThreadAllocatedBytes(thread.getId()), 0);
+		threads = ids;
+	}
+
+	/**
+	 * Register the metrics with the platform MBean server as com:type=SolverMetrics,name=name.
+	 */
+	public synchronized void register(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		this.name = new ObjectName("com:type=SolverMetrics,name=" + ObjectName.quote(name));
+		server.registerMBean(this, this.name);
+	}
+
+	/**
+	 * Print getSummary() every given amount of seconds on a background thread.
+	 */
+	public synchronized void startLog(double seconds) {
+		if (log != null)
+			throw new IllegalStateException("The log is already running!");
+		long period = (long) (seconds * 1e9);
+		if (period <= 0)
+			throw new IllegalArgumentException("Time between two log lines must be positive!");
+		log = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "Metrics log");
+			thread.setDaemon(true);
+			return thread;
+		});
+		log.scheduleAtFixedRate(() -> System.out.println(getSummary()), period, period, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Stop the log and remove the metrics from the MBean server.
+	 */
+	@Override
+	public synchronized void close() {
+		if (log != null) {
+			log.shutdown();
+			log = null;
+		}
+		if (name != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			}
+			catch (JMException e) {
+				//already gone
+			}
+			name = null;
+		}
+	}
+
+	@Override
+	public boolean isEnabled() { return enabled; }
+
+	@Override
+	public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+	@Override
+	public long getSteps() { return steps.get(); }
+
+	/**
+	 * Time steps per second since the last call, or the one before if that was less than RATE_WINDOW ago.
+	 */
+	@Override
+	public synchronized double getStepsPerSecond() {
+		updateRates();
+		return stepsPerSecond;
+	}
+
+	@Override
+	public synchronized double getAllocationRate() {
+		if (threadBean == null) return -1;
+		updateRates();
+		return allocationRate;
+	}
+
+	@Override
+	public long getDroppedFrames() {
+		FrameExchange source = exchange;
+		return source == null ? 0 : source.getDropped();
+	}
+
+	@Override
+	public long getDroppedSnapshots() {
+		SnapshotWriter source = snapshots;
+		return source == null ? 0 : source.getDropped();
+	}
+
+	@Override
+	public double getMinTemperature() { return minTemperature; }
+
+	@Override
+	public double getMaxTemperature() { return maxTemperature; }
+
+	@Override
+	public double getEnergy() { return energy; }
+
+	@Override
+	public String[] getLatencies() {
+		Phase[] phases = Phase.values();
+		String[] lines = new String[phases.length];
+		for (Phase phase : phases) {
+			Histogram h = histograms[phase.ordinal()];
+			lines[phase.ordinal()] = String.format("%s: %d, mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us", phase,
+					h.count(), meanLatency(phase.name()), h.percentile(50) / 1e3, h.percentile(99) / 1e3, h.max.get() / 1e3);
+		}
+		return lines;
+	}
+
+	@Override
+	public String getSummary() {
+		StringBuilder line = new StringBuilder();
+		line.append(String.format("steps: %d, steps/sec: %.1f", getSteps(), getStepsPerSecond()));
+		for (Phase phase : Phase.values()) {
+			Histogram h = histograms[phase.ordinal()];
+			if (h.count() > 0)
+				line.append(String.format(", %s p50/p99: %.1f/%.1f us", phase.name().toLowerCase(), h.percentile(50) / 1e3, h.percentile(99) / 1e3));
+		}
+		double rate = getAllocationRate();
+		if (rate >= 0)
+			line.append(String.format(", alloc: %.2f MB/s", rate / 1e6));
+		line.append(", dropped frames: ").append(getDroppedFrames());
+		line.append(", dropped snapshots: ").append(getDroppedSnapshots());
+		if (!Double.isNaN(maxTemperature))
+			line.append(String.format(", min: %.3f, max: %.3f, energy: %.6g", minTemperature, maxTemperature, energy));
+		return line.toString();
+	}
+
+	@Override
+	public double meanLatency(String phase) {
+		Histogram h = histograms[Phase.valueOf(phase.toUpperCase()).ordinal()];
+		long count = h.count();
+		return count == 0 ? 0 : h.total.get() / 1e3 / count;
+	}
+
+	@Override
+	public double percentileLatency(String phase, double percentile) {
+		return histograms[Phase.valueOf(phase.toUpperCase()).ordinal()].percentile(percentile) / 1e3;
+	}
+
+	@Override
+	public long[] latencyHistogram(String phase) {
+		Histogram h = histograms[Phase.valueOf(phase.toUpperCase()).ordinal()];
+		long[] counts = new long[BUCKETS];
+		for (int b = 0; b < BUCKETS; b++)
+			counts[b] = h.counts.get(b);
+		return counts;
+	}
+
+	@Override
+	public synchronized void reset() {
+		for (Histogram h : histograms)
+			h.reset();
+		steps.set(0);
+		minTemperature = Double.NaN;
+		maxTemperature = Double.NaN;
+		energy = Double.NaN;
+		windowStart = System.nanoTime();
+		windowSteps = 0;
+		windowBytes = allocatedBytes();
+		stepsPerSecond = 0;
+		allocationRate = 0;
+	}
+
+	/**
+	 * Start a new rate window if the current one is long enough.
+	 */
+	private void updateRates() {
+		long now = System.nanoTime();
+		long elapsed = now - windowStart;
+		if (elapsed < RATE_WINDOW)
+			return;
+		long currentSteps = steps.get();
+		long bytes = allocatedBytes();
+		stepsPerSecond = (currentSteps - windowSteps) * 1e9 / elapsed;
+		allocationRate = Math.max(bytes - windowBytes, 0) * 1e9 / elapsed;
+		windowStart = now;
+		windowSteps = currentSteps;
+		windowBytes = bytes;
+	}
+
+	private long allocatedBytes() {
+		if (threadBean == null)
+			return 0;
+		long sum = 0;
+		for (long bytes : threadBean.getThreadAllocatedBytes(threads))
+			if (bytes > 0)
+				sum += bytes;
+		return sum;
+	}
+}
@@ -0,0 +1,45 @@
+package com;
+
+/**
+ * @author Marius
+ *
+ * JMX view of SolverMetrics, e.g. for JConsole or VisualVM. Latencies are in microseconds, the phases are
+ * the names of SolverMetrics.Phase.
+ */
+public interface SolverMetricsMBean {
+
+	boolean isEnabled();
+	void setEnabled(boolean enabled);
+
+	long getSteps();
+	double getStepsPerSecond();
+
+	/**
+	 * Bytes allocated per second by the watched threads, -1 if the JVM can not measure it.
+	 */
+	double getAllocationRate();
+
+	long getDroppedFrames();
+	long getDroppedSnapshots();
+
+	double getMinTemperature();
+	double getMaxTemperature();
+	double getEnergy();
+
+	/**
+	 * One line per phase with the amount, mean, median, 99th percentile and largest latency.
+	 */
+	String[] getLatencies();
+
+	String getSummary();
+
+	double meanLatency(String phase);
+	double percentileLatency(String phase, double percentile);
+
+	/**
+	 * Amount of latencies per bucket, bucket k holds the latencies from 2^k to 2^(k+1) nanoseconds.
+	 */
+	long[] latencyHistogram(String phase);
+
+	void reset();
+}
@@ -0,0 +1,180 @@
+package com;
+
+import java.util.Arrays;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * Solves the heat equation on the mesh without taking the time steps one by one.
+ *
+ * With the bound fixed at 0 (as HeatSimulation sets it up) the sine functions diagonalize the 5-point
+ * stencil L: mode (p,q), sin(pi p i / (rows - 1)) * sin(pi q j / (cols - 1)), is only scaled by
+ * 		lambda_pq = lambdaY_p + lambdaX_q,	lambdaX_q = -4 sin^2(pi q / (2 (cols - 1)))
+ * and lambdaY_p the same for the rows. The temperatures are thus split into modes with a 2D SineTransform,
+ * every mode is advanced on its own and the modes are put together again with another transform. Each
+ * query is O(N log N) for N cells, whatever the amount of time steps.
+ *
+ * One explicit time step of NumericalSolution is u = u + r * L u with r = alpha^2 * deltaTime^2, so:
+ * 		- afterSteps(n, deltaTime) multiplies mode (p,q) by (1 + r * lambda_pq)^n, which gives the same
+ * 		  temperatures as n explicit time steps (to rounding). Unstable time steps blow up the same way.
+ * 		- fieldAt(t, deltaTime) is the limit of ever smaller steps with the same rate, r / deltaTime per
+ * 		  second of the 5-point stencil: mode (p,q) is multiplied by exp(alpha^2 * deltaTime * t * lambda_pq).
+ * 		  Note that, as in NumericalSolution, the rate depends on deltaTime.
+ *
+ * The transform of the initial temperatures is done once, so any amount of queries only cost one
+ * transform each. Not thread safe, see FFT.
+ */
+public class SpectralSolution {
+
+	private final int rows;
+	private final int cols;
+
+	private final double alpha;
+
+	/**
+	 * Modes of the temperatures, flat row-major like the grid. Mode (p,q) is at p * cols + q,
+	 * the bound is not used. Scaled so that the inverse transform is just a transform.
+	 */
+	private final double[] modes;
+
+	/**
+	 * Eigenvalues of the stencil in the y and x direction, index p and q.
+	 */
+	private final double[] lambdaY;
+	private final double[] lambdaX;
+
+	/**
+	 * Transforms of the columns (length rows - 2) and rows (length cols - 2), null without interior.
+	 */
+	private final SineTransform columnTransform;
+	private final SineTransform rowTransform;
+
+	/**
+	 * @param initial	Initial temperatures, including the bound which must be 0. Not changed.
+	 * @param alpha		Thermal diffusivity constant.
+	 */
+	public SpectralSolution(SimpleMatrix initial, double alpha) {
+		this(initial.getNumRows(), initial.getNumCols(), alpha);
+		setField(initial.getDDRM().getData());
+	}
+
+	/**
+	 * Solution without temperatures, setField(...) must be called before the first query.
+	 */
+	SpectralSolution(int rows, int cols, double alpha) {
+		this.rows = rows;
+		this.cols = cols;
+		this.alpha = alpha;
+		modes = new double[rows * cols];
+		lambdaY = eigenvalues(rows);
+		lambdaX = eigenvalues(cols);
+		boolean interior = rows > 2 && cols > 2;
+		columnTransform = interior ? new SineTransform(rows - 2) : null;
+		rowTransform = interior ? new SineTransform(cols - 2) : null;
+	}
+
+	/**
+	 * Replace the initial temperatures.
+	 * @param u		Flat row-major temperatures including the bound, which must be 0.
+	 */
+	public void setField(double[] u) {
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < cols; j++)
+				if ((i == 0 || i == rows - 1 || j == 0 || j == cols - 1) && u[i * cols + j] != 0)
+					throw new IllegalArgumentException("The spectral solution needs the bound to be 0!");
+		if (columnTransform == null)
+			return;
+		System.arraycopy(u, 0, modes, 0, modes.length);
+		transform(modes);
+		double scale = 4.0 / ((rows - 1) * (double) (cols - 1));
+		for (int i = 1; i < rows - 1; i++)
+			for (int pos = i * cols + 1; pos < i * cols + cols - 1; pos++)
+				modes[pos] *= scale;
+	}
+
+	/**
+	 * Temperatures after the given amount of explicit time steps from the initial temperatures.
+	 * @param steps			Amount of time steps.
+	 * @param deltaTime		Time step in seconds.
+	 */
+	public SimpleMatrix afterSteps(long steps, double deltaTime) {
+		SimpleMatrix result = new SimpleMatrix(rows, cols);
+		afterSteps(steps, deltaTime, result.getDDRM().getData());
+		return result;
+	}
+
+	/**
+	 * Same as afterSteps(steps, deltaTime), but the temperatures are written to out. The bound of out
+	 * is set to 0.
+	 */
+	public void afterSteps(long steps, double deltaTime, double[] out) {
+		double r = Math.pow(alpha, 2) * deltaTime * deltaTime;
+		Arrays.fill(out, 0);
+		if (columnTransform == null)
+			return;
+		for (int p = 1; p < rows - 1; p++) {
+			for (int q = 1; q < cols - 1; q++) {
+				int pos = p * cols + q;
+				out[pos] = modes[pos] * Math.pow(1 + r * (lambdaY[p] + lambdaX[q]), steps);
+			}
+		}
+		transform(out);
+	}
+
+	/**
+	 * Temperatures at the given time, see the class description.
+	 * @param time			Time in seconds since the initial temperatures.
+	 * @param deltaTime		Time step whose rate is used.
+	 */
+	public SimpleMatrix fieldAt(double time, double deltaTime) {
+		SimpleMatrix result = new SimpleMatrix(rows, cols);
+		fieldAt(time, deltaTime, result.getDDRM().getData());
+		return result;
+	}
+
+	/**
+	 * Same as fieldAt(time, deltaTime), but the temperatures are written to out.
+	 */
+	public void fieldAt(double time, double deltaTime, double[] out) {
+		double rate = Math.pow(alpha, 2) * deltaTime * time;
+		Arrays.fill(out, 0);
+		if (columnTransform == null)
+			return;
+		//exp(a + b) = exp(a) * exp(b), so only one exp per row and per column
+		double[] decayX = new double[cols];
+		for (int q = 1; q < cols - 1; q++)
+			decayX[q] = Math.exp(rate * lambdaX[q]);
+		for (int p = 1; p < rows - 1; p++) {
+			double decayY = Math.exp(rate * lambdaY[p]);
+			for (int q = 1; q < cols - 1; q++) {
+				int pos = p * cols + q;
+				out[pos] = modes[pos] * decayY * decayX[q];
+			}
+		}
+		transform(out);
+	}
+
+	public double getAlpha() { return alpha; }
+
+	/**
+	 * 2D sine transform of the interior of the grid in place: all the rows, then all the columns.
+	 */
+	private void transform(double[] u) {
+		rowTransform.transform(u, cols + 1, 1, cols, rows - 2);
+		columnTransform.transform(u, cols + 1, cols, 1, cols - 2);
+	}
+
+	/**
+	 * Eigenvalues of the second difference with n points including the bound, index 1 to n-2.
+	 */
+	private static double[] eigenvalues(int n) {
+		double[] lambda = new double[n];
+		for (int k = 1; k < n - 1; k++) {
+			double s = Math.sin(Math.PI * k / (2.0 * (n - 1)));
+			lambda[k] = -4 * s * s;
+		}
+		return lambda;
+	}
+}
@@ -0,0 +1,216 @@
+package com;
+
+import java.util.Arrays;
+
+/**
+ * @author Marius
+ *
+ * Matrix-free version of the linear system used in NumericalSolution. Instead of building the
+ * dense (rows-2)*(cols-2) square matrix A and computing b = Ax, the 5-point stencil is applied
+ * directly to the temperature grid.
+ *
+ * The grid is a flat row-major double[] (the same layout EJML uses internally), i.e. the element
+ * (i,j) is stored at index i * cols + j. The outer values of the grid are the bound and are never
+ * written to.
+ *
+ * Each interior value is calculated with the exact same arithmetic (and order of operations) as
+ * the matrix product in NumericalSolution, so both paths give the same result.
+ */
+public final class StencilKernel {
+
+	/**
+	 * Vectorized kernel, if it is compiled in and the JVM has the incubator module. Created on first use.
+	 */
+	private static StepKernel vectorized;
+	private static boolean vectorAvailable = false;
+
+	/**
+	 * Columns of the grid vectorized() tests the kernel on: more than the widest vector (8 doubles on
+	 * AVX-512, up to 32 with SVE) plus the bound, and not a multiple of it, so both the vector loop and
+	 * the scalar tail run.
+	 */
+	private static final int PROBE_COLS = 3 + 2 * 32;
+	private static final int PROBE_ROWS = 4;
+
+	private StencilKernel() {}
+
+	/**
+	 * The step kernel using the Vector API (see VectorStencilKernel) if it is available, otherwise
+	 * the scalar StencilKernel.step(...). Both give exactly the same result.
+	 */
+	public static synchronized StepKernel vectorized() {
+		if (vectorized == null) {
+			vectorized = StencilKernel::step;
+			try {
+				StepKernel kernel = (StepKernel) Class.forName("com.VectorStencilKernel").getDeclaredConstructor().newInstance();
+				//make sure the incubator module is actually there and the kernel gives the same result before using it
+				if (probe(kernel)) {
+					vectorized = kernel;
+					vectorAvailable = true;
+				}
+			}
+			catch (ReflectiveOperationException | LinkageError e) {
+				//not compiled with the vector profile or started without --add-modules jdk.incubator.vector
+			}
+		}
+		return vectorized;
+	}
+
+	/**
+	 * Step a small grid with kernel and with step(...).
+	 * @return		True if both give exactly the same temperatures.
+	 */
+	private static boolean probe(StepKernel kernel) {
+		double[] u = new double[PROBE_ROWS * PROBE_COLS];
+		for (int pos = 0; pos < u.length; pos++)
+			u[pos] = (pos * 37 % 101) * 0.25;
+		double[] expected = u.clone();
+		step(u, expected, PROBE_COLS, 1, 0.2, 1, PROBE_ROWS - 1);
+		double[] next = u.clone();
+		kernel.step(u, next, PROBE_COLS, 1, 0.2, 1, PROBE_ROWS - 1);
+		double[] reduced = u.clone();
+		double[] partial = { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0 };
+		kernel.stepReduce(u, reduced, PROBE_COLS, 1, 0.2, 1, PROBE_ROWS - 1, partial);
+		return Arrays.equals(expected, next) && Arrays.equals(expected, reduced);
+	}
+
+	/**
+	 * True if vectorized() returns the Vector API kernel.
+	 */
+	public static synchronized boolean isVectorized() {
+		vectorized();
+		return vectorAvailable;
+	}
+
+	/**
+	 * Change in temperature for every interior pixel given the current temperatures u.
+	 * The result is written into velocity, the bound of velocity is left untouched.
+	 * @param u				Current temperatures.
+	 * @param velocity		Output, change in temperature.
+	 * @param rows			Amount of rows in the grid (including the bound).
+	 * @param cols			Amount of columns in the grid (including the bound).
+	 * @param alpha			Thermal diffusivity constant.
+	 * @param deltaTime		Time step in seconds.
+	 */
+	public static void velocity(double[] u, double[] velocity, int rows, int cols, double alpha, double deltaTime) {
+		velocity(u, velocity, cols, alpha, deltaTime, 1, rows - 1);
+	}
+
+	/**
+	 * Same as velocity(...) but only for the rows rowStart (inclusive) to rowEnd (exclusive).
+	 * Rows outside of 1 to rows-2 must not be given.
+	 */
+	public static void velocity(double[] u, double[] velocity, int cols, double alpha, double deltaTime, int rowStart, int rowEnd) {
+		final double c = Math.pow(alpha, 2);
+		final double center = -4 * Math.pow(alpha, 2);
+		final double scalar = deltaTime * deltaTime;
+		for (int i = rowStart; i < rowEnd; i++) {
+			int pos = i * cols + 1;
+			int end = i * cols + cols - 1;
+			for (; pos < end; pos++) {
+				double val = c * u[pos - cols] + c * u[pos - 1] + center * u[pos] + c * u[pos + 1] + c * u[pos + cols];
+				velocity[pos] = val * scalar;
+			}
+		}
+	}
+
+	/**
+	 * One whole time step, next = u + velocity(u). u is not changed and the bound of next is
+	 * left untouched, so next must already contain the same bound as u.
+	 * @param u				Current temperatures.
+	 * @param next			Output, temperatures after the time step.
+	 * @param rows			Amount of rows in the grid (including the bound).
+	 * @param cols			Amount of columns in the grid (including the bound).
+	 * @param alpha			Thermal diffusivity constant.
+	 * @param deltaTime		Time step in seconds.
+	 */
+	public static void step(double[] u, double[] next, int rows, int cols, double alpha, double deltaTime) {
+		step(u, next, cols, alpha, deltaTime, 1, rows - 1);
+	}
+
+	/**
+	 * Same as step(...) but only for the rows rowStart (inclusive) to rowEnd (exclusive).
+	 * Rows outside of 1 to rows-2 must not be given.
+	 */
+	public static void step(double[] u, double[] next, int cols, double alpha, double deltaTime, int rowStart, int rowEnd) {
+		final double c = Math.pow(alpha, 2);
+		final double center = -4 * Math.pow(alpha, 2);
+		final double scalar = deltaTime * deltaTime;
+		for (int i = rowStart; i < rowEnd; i++) {
+			int pos = i * cols + 1;
+			int end = i * cols + cols - 1;
+			for (; pos < end; pos++) {
+				double val = c * u[pos - cols] + c * u[pos - 1] + center * u[pos] + c * u[pos + 1] + c * u[pos + cols];
+				next[pos] = u[pos] + val * scalar;
+			}
+		}
+	}
+
+	/**
+	 * Same as step(...) for the rows rowStart (inclusive) to rowEnd (exclusive), and the new temperatures are
+	 * reduced in the same sweep: partial[0] becomes the min of partial[0] and the new temperatures, partial[1]
+	 * the max, and the new temperatures are added to partial[2]. The temperatures are the same as step(...).
+	 */
+	public static void stepReduce(double[] u, double[] next, int cols, double alpha, double deltaTime, int rowStart, int rowEnd, double[] partial) {
+		stepReduce(u, next, cols, alpha, deltaTime, rowStart, rowEnd, 1, cols - 1, partial);
+	}
+
+	/**
+	 * Same as stepReduce(...) but only for the block of rows rowStart to rowEnd and columns colStart to colEnd
+	 * (exclusive ends). Columns outside of 1 to cols-2 must not be given.
+	 */
+	public static void stepReduce(double[] u, double[] next, int cols, double alpha, double deltaTime, int rowStart, int rowEnd,
+			int colStart, int colEnd, double[] partial) {
+		final double c = Math.pow(alpha, 2);
+		final double center = -4 * Math.pow(alpha, 2);
+		final double scalar = deltaTime * deltaTime;
+		double min = partial[0];
+		double max = partial[1];
+		double sum = partial[2];
+		for (int i = rowStart; i < rowEnd; i++) {
+			int pos = i * cols + colStart;
+			int end = i * cols + colEnd;
+			//summing every row on its own first loses less precision on large meshes
+			double rowSum = 0;
+			for (; pos < end; pos++) {
+				double val = c * u[pos - cols] + c * u[pos - 1] + center * u[pos] + c * u[pos + 1] + c * u[pos + cols];
+				double value = u[pos] + val * scalar;
+				next[pos] = value;
+				if (value < min) min = value;
+				if (value > max) max = value;
+				rowSum += value;
+			}
+			sum += rowSum;
+		}
+		partial[0] = min;
+		partial[1] = max;
+		partial[2] = sum;
+	}
+
+	/**
+	 * Same as step(...) but only for the block of rows rowStart to rowEnd and columns colStart to colEnd
+	 * (exclusive ends). Columns outside of 1 to cols-2 must not be given.
+	 */
+	public static void step(double[] u, double[] next, int cols, double alpha, double deltaTime, int rowStart, int rowEnd, int colStart, int colEnd) {
+		final double c = Math.pow(alpha, 2);
+		final double center = -4 * Math.pow(alpha, 2);
+		final double scalar = deltaTime * deltaTime;
+		for (int i = rowStart; i < rowEnd; i++) {
+			int pos = i * cols + colStart;
+			int end = i * cols + colEnd;
+			for (; pos < end; pos++) {
+				double val = c * u[pos - cols] + c * u[pos - 1] + center * u[pos] + c * u[pos + 1] + c * u[pos + cols];
+				next[pos] = u[pos] + val * scalar;
+			}
+		}
+	}
+
+	/**
+	 * Add the velocity to the temperatures in place, i.e. u = u + velocity.
+	 * Since the bound of velocity is always 0, the bound of u does not change.
+	 */
+	public static void add(double[] u, double[] velocity) {
+		for (int pos = 0; pos < velocity.length; pos++)
+			u[pos] += velocity[pos];
+	}
+}
@@ -0,0 +1,32 @@
+package com;
+
+/**
+ * @author Marius
+ *
+ * One time step of the explicit scheme for a range of rows, next = u + velocity(u).
+ * See StencilKernel.step(...) for the reference implementation, other implementations
+ * must give exactly the same result.
+ */
+@FunctionalInterface
+public interface StepKernel {
+
+	/**
+	 * @param u				Current temperatures, flat row-major.
+	 * @param next			Output, temperatures after the time step.
+	 * @param cols			Amount of columns in the grid (including the bound).
+	 * @param alpha			Thermal diffusivity constant.
+	 * @param deltaTime		Time step in seconds.
+	 * @param rowStart		First row to update (inclusive), at least 1.
+	 * @param rowEnd		Last row to update (exclusive), at most rows-1.
+	 */
+	void step(double[] u, double[] next, int cols, double alpha, double deltaTime, int rowStart, int rowEnd);
+
+	/**
+	 * Same as step(...), and the new temperatures are reduced into partial in the same sweep, see
+	 * StencilKernel.stepReduce(...). The min and max must be the same as the scalar kernel, the sum may
+	 * differ in the last bits.
+	 */
+	default void stepReduce(double[] u, double[] next, int cols, double alpha, double deltaTime, int rowStart, int rowEnd, double[] partial) {
+		StencilKernel.stepReduce(u, next, cols, alpha, deltaTime, rowStart, rowEnd, partial);
+	}
+}
@@ -0,0 +1,15 @@
+package com;
+
+/**
+ * @author Marius
+ *
+ * A surface fitted to the input points, giving the initial temperature at any position of the mesh.
+ * See Polynomial and RadialBasisSurface.
+ */
+public interface Surface {
+
+	/**
+	 * Value of the surface at the given position, in mesh coordinates.
+	 */
+	double valueAt(double x, double y);
+}
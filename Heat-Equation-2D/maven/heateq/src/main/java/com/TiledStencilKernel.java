@@ -0,0 +1,160 @@
+package com;
+
+/**
+ * @author Marius
+ *
+ * Advances the temperatures several time steps in one pass over the grid. For grids that do not fit
+ * in the cache a single time step has to stream the whole grid through memory, so the speed is limited
+ * by the memory bandwidth and not by the calculations.
+ *
+ * Instead the grid is split into tiles. Every tile is copied into a small scratch buffer together with
+ * a halo of k cells around it, and then advanced k time steps while it is still in the cache. After
+ * every time step one more layer of the halo is no longer correct (it would need cells from outside the
+ * scratch buffer), but the halo is exactly wide enough for the tile itself to be correct after k steps.
+ * The halos are calculated by several tiles, which is the price for reading the grid only once per
+ * k time steps.
+ *
+ * Every pixel is calculated with the same arithmetic as in StencilKernel.step(...), so the result
+ * is exactly the same as k single time steps. The bound of the grid is fixed. The temperatures can be
+ * reduced (see StencilKernel.stepReduce(...)) while the tiles are copied out, when they are still in
+ * the cache.
+ */
+public class TiledStencilKernel {
+
+	private final int rows;
+	private final int cols;
+
+	private final int tileRows;
+	private final int tileCols;
+
+	/**
+	 * Largest amount of time steps per pass, decides the width of the halo.
+	 */
+	private final int maxSteps;
+
+	/**
+	 * Scratch buffers holding a tile and its halo, swapped every time step.
+	 */
+	private double[] a;
+	private double[] b;
+
+	/**
+	 * @param rows		Amount of rows in the grid (including the bound).
+	 * @param cols		Amount of columns in the grid (including the bound).
+	 * @param tileRows	Amount of rows in a tile, without the halo.
+	 * @param tileCols	Amount of columns in a tile, without the halo.
+	 * @param maxSteps	Largest amount of time steps done in one pass.
+	 */
+	public TiledStencilKernel(int rows, int cols, int tileRows, int tileCols, int maxSteps) {
+		if (tileRows < 1 || tileCols < 1 || maxSteps < 1)
+			throw new IllegalArgumentException("Tile size and amount of steps must be at least 1!");
+		this.rows = rows;
+		this.cols = cols;
+		this.tileRows = tileRows;
+		this.tileCols = tileCols;
+		this.maxSteps = maxSteps;
+		int size = (tileRows + 2 * maxSteps) * (tileCols + 2 * maxSteps);
+		a = new double[size];
+		b = new double[size];
+	}
+
+	public int getMaxSteps() { return maxSteps; }
+
+	/**
+	 * Advance u by steps time steps and write the result into out. u is not changed, the bound of out
+	 * is left untouched so it must already contain the same bound as u.
+	 * @param u				Current temperatures, flat row-major.
+	 * @param out			Output, temperatures after the time steps. Must not be u.
+	 * @param alpha			Thermal diffusivity constant.
+	 * @param deltaTime		Time step in seconds.
+	 * @param steps			Amount of time steps, at most maxSteps.
+	 */
+	public void advance(double[] u, double[] out, double alpha, double deltaTime, int steps) {
+		advance(u, out, alpha, deltaTime, steps, null);
+	}
+
+	/**
+	 * Same as advance(...), and the temperatures after the last time step are reduced into partial like
+	 * StencilKernel.stepReduce(...) does. The sum may differ from it in the last bits.
+	 * @param partial		Min, max and sum to reduce into, null for no reduction.
+	 */
+	public void advance(double[] u, double[] out, double alpha, double deltaTime, int steps, double[] partial) {
+		if (steps < 1 || steps > maxSteps)
+			throw new IllegalArgumentException("Amount of steps must be between 1 and " + maxSteps);
+		for (int r0 = 1; r0 < rows - 1; r0 += tileRows) {
+			int r1 = Math.min(r0 + tileRows, rows - 1);
+			for (int c0 = 1; c0 < cols - 1; c0 += tileCols) {
+				int c1 = Math.min(c0 + tileCols, cols - 1);
+				advanceTile(u, out, alpha, deltaTime, steps, r0, r1, c0, c1, partial);
+			}
+		}
+	}
+
+	/**
+	 * Advance the tile rows r0 to r1 and columns c0 to c1 (exclusive).
+	 */
+	private void advanceTile(double[] u, double[] out, double alpha, double deltaTime, int steps, int r0, int r1, int c0, int c1, double[] partial) {
+		//the tile and its halo, clipped to the grid
+		int top = Math.max(r0 - steps, 0);
+		int bottom = Math.min(r1 + steps, rows);
+		int left = Math.max(c0 - steps, 0);
+		int right = Math.min(c1 + steps, cols);
+		int width = right - left;
+
+		for (int i = top; i < bottom; i++)
+			System.arraycopy(u, i * cols + left, a, (i - top) * width, width);
+		//b only needs the cells that are never calculated, that is the bound of the grid
+		if (top == 0)
+			System.arraycopy(a, 0, b, 0, width);
+		if (bottom == rows)
+			System.arraycopy(a, (bottom - 1 - top) * width, b, (bottom - 1 - top) * width, width);
+		for (int i = top; i < bottom; i++) {
+			int row = (i - top) * width;
+			if (left == 0) b[row] = a[row];
+			if (right == cols) b[row + width - 1] = a[row + width - 1];
+		}
+
+		final double c = Math.pow(alpha, 2);
+		final double center = -4 * Math.pow(alpha, 2);
+		final double scalar = deltaTime * deltaTime;
+		for (int s = 1; s <= steps; s++) {
+			//cells that are still correct after this step, never the bound of the grid
+			int rowStart = Math.max(r0 - (steps - s), 1) - top;
+			int rowEnd = Math.min(r1 + (steps - s), rows - 1) - top;
+			int colStart = Math.max(c0 - (steps - s), 1) - left;
+			int colEnd = Math.min(c1 + (steps - s), cols - 1) - left;
+			for (int i = rowStart; i < rowEnd; i++) {
+				int pos = i * width + colStart;
+				int end = i * width + colEnd;
+				for (; pos < end; pos++) {
+					double val = c * a[pos - width] + c * a[pos - 1] + center * a[pos] + c * a[pos + 1] + c * a[pos + width];
+					b[pos] = a[pos] + val * scalar;
+				}
+			}
+			double[] tmp = a;
+			a = b;
+			b = tmp;
+		}
+
+		for (int i = r0; i < r1; i++)
+			System.arraycopy(a, (i - top) * width + (c0 - left), out, i * cols + c0, c1 - c0);
+		if (partial == null)
+			return;
+		double min = partial[0];
+		double max = partial[1];
+		double sum = partial[2];
+		for (int i = r0; i < r1; i++) {
+			double rowSum = 0;
+			for (int pos = (i - top) * width + (c0 - left), end = pos + c1 - c0; pos < end; pos++) {
+				double value = a[pos];
+				if (value < min) min = value;
+				if (value > max) max = value;
+				rowSum += value;
+			}
+			sum += rowSum;
+		}
+		partial[0] = min;
+		partial[1] = max;
+		partial[2] = sum;
+	}
+}
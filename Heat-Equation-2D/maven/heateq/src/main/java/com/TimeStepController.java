@@ -0,0 +1,121 @@
+package com;
+
+/**
+ * @author Marius
+ *
+ * Makes sure a NumericalSolution is only advanced with stable time steps.
+ *
+ * One explicit time step is u = u + r * L u with r = alpha^2 * deltaTime^2 and L the 5-point stencil
+ * (see NumericalSolution). The scheme is stable as long as r <= 1/4, i.e. deltaTime <= 1 / (2 * alpha).
+ * Larger time steps make the solution oscillate and blow up.
+ *
+ * A time step that is too large is either rejected (an exception is thrown) or clamped to the largest
+ * stable time step, depending on the policy. The controller counts the time steps taken and the time
+ * steps that were rejected or clamped.
+ */
+public class TimeStepController {
+
+	public enum Policy { REJECT, CLAMP }
+
+	private final NumericalSolution ns;
+
+	private final Policy policy;
+
+	private final double maxDeltaTime;
+
+	private double time;
+	private long steps;
+	private long rejectedSteps = 0;
+
+	public TimeStepController(NumericalSolution ns, Policy policy) {
+		this(ns, policy, 0, 0);
+	}
+
+	/**
+	 * Controller for a solution that has already been advanced, e.g. resumed from a Checkpoint.
+	 * @param time		Simulated time in seconds so far.
+	 * @param steps		Amount of time steps taken so far.
+	 */
+	public TimeStepController(NumericalSolution ns, Policy policy, double time, long steps) {
+		this.ns = ns;
+		this.policy = policy;
+		this.time = time;
+		this.steps = steps;
+		maxDeltaTime = maxStableDeltaTime(ns.getAlpha());
+	}
+
+	/**
+	 * Largest time step the explicit scheme is stable for.
+	 * @param alpha		Thermal diffusivity constant.
+	 */
+	public static double maxStableDeltaTime(double alpha) {
+		return 1 / (2 * Math.abs(alpha));
+	}
+
+	public static boolean isStable(double alpha, double deltaTime) {
+		return deltaTime > 0 && deltaTime <= maxStableDeltaTime(alpha);
+	}
+
+	/**
+	 * Advance the solution by one time step.
+	 * @param deltaTime		Requested time step in seconds.
+	 * @return				The time step that was used.
+	 */
+	public double step(double deltaTime) {
+		return step(deltaTime, 1);
+	}
+
+	/**
+	 * Advance the solution by count time steps of the same size, see NumericalSolution.advance(...).
+	 * If the time step is unstable all of the count time steps are rejected or clamped.
+	 * @param deltaTime		Requested time step in seconds.
+	 * @param count			Amount of time steps.
+	 * @return				The time step that was used.
+	 */
+	public double step(double deltaTime, long count) {
+		if (deltaTime <= 0)
+			throw new IllegalArgumentException("Time step must be positive!");
+		if (deltaTime > maxDeltaTime) {
+			rejectedSteps += count;
+			if (policy == Policy.REJECT)
+				throw new IllegalArgumentException("Time step " + deltaTime + " is unstable, the largest stable time step is " + maxDeltaTime);
+			deltaTime = maxDeltaTime;
+		}
+		if (count == 1) {
+			ns.updateVelocity(deltaTime);
+			ns.updateData();
+		}
+		else
+			ns.advance(count, deltaTime);
+		time += deltaTime * count;
+		steps += count;
+		return deltaTime;
+	}
+
+	/**
+	 * Advance the solution to the given time using as few stable time steps as possible.
+	 * All the time steps have the same size so that the target time is hit exactly.
+	 * @param targetTime	Time in seconds to advance to.
+	 * @return				Amount of time steps taken.
+	 */
+	public long advanceTo(double targetTime) {
+		double remaining = targetTime - time;
+		if (remaining <= 0) return 0;
+		long count = (long) Math.ceil(remaining / maxDeltaTime);
+		double deltaTime = remaining / count;
+		ns.advance(count, deltaTime);
+		steps += count;
+		time = targetTime;
+		return count;
+	}
+
+	public double getTime() { return time; }
+	public long getSteps() { return steps; }
+	public long getRejectedSteps() { return rejectedSteps; }
+	public double getMaxDeltaTime() { return maxDeltaTime; }
+
+	@Override
+	public String toString() {
+		return "time: " + time + " s, steps: " + steps + ", rejected: " + rejectedSteps + ", max stable time step: " + maxDeltaTime + " s";
+	}
+}
@@ -0,0 +1,80 @@
+package com;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * Checks that a time step in DOUBLE_BUFFER mode allocates nothing once the solution is warmed up.
+ * The bytes allocated by the calling thread (ThreadMXBean.getThreadAllocatedBytes) are measured across
+ * a number of updateVelocity/updateData steps, with and without reductions. Any allocation is printed
+ * and the check exits with status 1. Runs in the test phase of the build, it is not part of the jar.
+ *
+ * Usage: AllocationCheck [steps] [meshSize]
+ * Defaults to 1000 steps on a 128x128 mesh.
+ */
+public class AllocationCheck {
+
+	/**
+	 * Time steps before measuring, enough for the JIT to compile the step and remove its allocations.
+	 */
+	private static final int WARMUP_STEPS = 20000;
+
+	public static void main(String[] args) {
+		int steps = 1000;
+		int size = 128;
+		if (args.length > 0)
+			steps = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			size = Integer.parseInt(args[1]);
+
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)
+				|| !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			System.out.println("AllocationCheck: allocated bytes can not be measured on this JVM, skipped");
+			return;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		boolean ok = check(threads, size, steps, false) & check(threads, size, steps, true);
+		if (!ok)
+			System.exit(1);
+	}
+
+	/**
+	 * Warm up a DOUBLE_BUFFER solution and measure the bytes allocated by steps time steps.
+	 * @return		True if nothing was allocated.
+	 */
+	private static boolean check(com.sun.management.ThreadMXBean threads, int size, int steps, boolean reductions) {
+		SimpleMatrix matrix = new SimpleMatrix(size, size);
+		for (int i = size / 4; i < 3 * size / 4; i++)
+			for (int j = size / 4; j < 3 * size / 4; j++)
+				matrix.set(i, j, 100);
+		NumericalSolution ns = new NumericalSolution(matrix, 5, NumericalSolution.Mode.DOUBLE_BUFFER);
+		ns.setReductions(reductions);
+		//small time step so the temperatures stay around for the whole warm up
+		final double deltaTime = 0.01;
+		long threadId = Thread.currentThread().getId();
+		for (int n = 0; n < WARMUP_STEPS; n++)
+			step(ns, deltaTime);
+
+		long before = threads.getThreadAllocatedBytes(threadId);
+		for (int n = 0; n < steps; n++)
+			step(ns, deltaTime);
+		long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+		String name = "DOUBLE_BUFFER" + (reductions ? " with reductions" : "");
+		System.out.printf("AllocationCheck: %s, %dx%d, %d steps: %d bytes%n", name, size, size, steps, allocated);
+		return allocated == 0;
+	}
+
+	private static void step(NumericalSolution ns, double deltaTime) {
+		ns.updateVelocity(deltaTime);
+		ns.updateData();
+		ns.getStats();
+	}
+}
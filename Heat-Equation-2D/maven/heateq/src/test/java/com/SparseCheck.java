@@ -0,0 +1,134 @@
+package com;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * @author Marius
+ *
+ * Checks that SPARSE mode (see ActiveTiles) gives exactly the same temperatures as DOUBLE_BUFFER after
+ * every time step. Skipping the tiles that are not active is only exact as long as a tile joins the set
+ * before its neighbours give it heat, so this catches a change to the kernel, the tiles or the reductions
+ * that breaks that.
+ *
+ * Every mesh size is run with a hot spot, a bound that is not 0, a few random values, a -0.0 cell and an
+ * all zero field. The temperatures are compared with Arrays.equals (bit for bit) after every time step,
+ * stepped one at a time with an extra updateVelocity(...) now and then and in groups through advance(...).
+ * With reductions the min and max must be the same as in DOUBLE_BUFFER, the energy is summed in another
+ * order and only has to be close. Any difference is printed and the check exits with status 1. Runs in
+ * the test phase of the build, it is not part of the jar.
+ *
+ * Usage: SparseCheck [steps]
+ * Defaults to 400 time steps.
+ */
+public class SparseCheck {
+
+	private static final double ALPHA = 5;
+	private static final double DELTA_TIME = 0.1;
+
+	/**
+	 * Time steps per call of advance(...).
+	 */
+	private static final int GROUP = 10;
+
+	/**
+	 * Rows and columns of the meshes, including sizes that are smaller than a tile or not a multiple of it.
+	 */
+	private static final int[][] SIZES = { { 3, 3 }, { 2, 5 }, { 4, 100 }, { 50, 50 }, { 37, 201 }, { 129, 65 }, { 300, 203 } };
+
+	private static final String[] FIELDS = { "hot spot", "hot bound", "random", "negative zero", "zero" };
+
+	public static void main(String[] args) {
+		int steps = 400;
+		if (args.length > 0)
+			steps = Integer.parseInt(args[0]);
+
+		Random random = new Random(5);
+		int failed = 0;
+		int checked = 0;
+		for (int[] size : SIZES) {
+			for (int field = 0; field < FIELDS.length; field++) {
+				String name = size[0] + "x" + size[1] + " " + FIELDS[field];
+				SimpleMatrix matrix = field(size[0], size[1], field, random);
+				if (!check(name, matrix, steps))
+					failed++;
+				checked++;
+			}
+		}
+		System.out.printf("SparseCheck: %d fields, %d steps: %s%n", checked, steps, failed == 0 ? "identical to DOUBLE_BUFFER" : failed + " differ");
+		if (failed > 0)
+			System.exit(1);
+	}
+
+	private static SimpleMatrix field(int rows, int cols, int field, Random random) {
+		SimpleMatrix matrix = new SimpleMatrix(rows, cols);
+		boolean inside = rows > 2 && cols > 2;
+		switch (field) {
+		case 0:
+			if (inside)
+				matrix.set(rows / 2, cols / 2, 100);
+			break;
+		case 1:
+			matrix.set(0, cols / 2, 50);
+			break;
+		case 2:
+			for (int k = 0; k < 5; k++)
+				matrix.set(random.nextInt(rows), random.nextInt(cols), random.nextDouble() * 100);
+			break;
+		case 3:
+			if (inside) {
+				matrix.set(rows - 2, cols - 2, -0.0);
+				matrix.set(1, 1, 1);
+			}
+			break;
+		default:
+			break;
+		}
+		return matrix;
+	}
+
+	/**
+	 * Step the field in DOUBLE_BUFFER and SPARSE mode and compare them after every time step.
+	 * @return		True if all the temperatures and stats matched.
+	 */
+	private static boolean check(String name, SimpleMatrix matrix, int steps) {
+		NumericalSolution dense = new NumericalSolution(matrix.copy(), ALPHA, NumericalSolution.Mode.DOUBLE_BUFFER);
+		NumericalSolution sparse = new NumericalSolution(matrix.copy(), ALPHA, NumericalSolution.Mode.SPARSE);
+		NumericalSolution grouped = new NumericalSolution(matrix.copy(), ALPHA, NumericalSolution.Mode.SPARSE);
+		dense.setReductions(true);
+		grouped.setReductions(true);
+		for (int s = 1; s <= steps; s++) {
+			dense.updateVelocity(DELTA_TIME);
+			dense.updateData();
+			double[] expected = dense.getSolution().getDDRM().getData();
+			sparse.updateVelocity(DELTA_TIME);
+			//the velocity must not depend on how often it is calculated
+			if (s % 7 == 0)
+				sparse.updateVelocity(DELTA_TIME);
+			sparse.updateData();
+			if (!Arrays.equals(expected, sparse.getSolution().getDDRM().getData()))
+				return fail(name, "step", s);
+			if (s % GROUP == 0) {
+				grouped.advance(GROUP, DELTA_TIME);
+				if (!Arrays.equals(expected, grouped.getSolution().getDDRM().getData()))
+					return fail(name, "advance to step", s);
+				if (!sameStats(dense.getStats(), grouped.getStats()))
+					return fail(name, "stats at step", s);
+			}
+		}
+		return true;
+	}
+
+	private static boolean sameStats(FieldStats expected, FieldStats actual) {
+		double tolerance = 1e-12 * Math.max(1, Math.abs(expected.getEnergy()));
+		return expected.getMin() == actual.getMin() && expected.getMax() == actual.getMax()
+				&& Math.abs(expected.getEnergy() - actual.getEnergy()) <= tolerance;
+	}
+
+	private static boolean fail(String name, String what, int step) {
+		System.out.println("SparseCheck: " + name + " differs from DOUBLE_BUFFER, " + what + " " + step);
+		return false;
+	}
+}
@@ -0,0 +1,97 @@
+package com;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * @author Marius
+ *
+ * StencilKernel.step(...) written with the Vector API, so that several pixels are updated
+ * with one SIMD instruction (4 with AVX2, 8 with AVX-512).
+ *
+ * The operations are done in the same order as in StencilKernel and no fused multiply-add is
+ * used, so the result is exactly the same as the scalar kernel.
+ *
+ * This class is only compiled with the vector profile (mvn -P vector ...) and only works when the
+ * JVM is started with --add-modules jdk.incubator.vector. Use StencilKernel.vectorized() to get it,
+ * which falls back to the scalar kernel otherwise.
+ */
+public final class VectorStencilKernel implements StepKernel {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public void step(double[] u, double[] next, int cols, double alpha, double deltaTime, int rowStart, int rowEnd) {
+		final double c = Math.pow(alpha, 2);
+		final double center = -4 * Math.pow(alpha, 2);
+		final double scalar = deltaTime * deltaTime;
+		final int lanes = SPECIES.length();
+		for (int i = rowStart; i < rowEnd; i++) {
+			int pos = i * cols + 1;
+			int end = i * cols + cols - 1;
+			for (; pos + lanes <= end; pos += lanes) {
+				DoubleVector mid = DoubleVector.fromArray(SPECIES, u, pos);
+				DoubleVector val = DoubleVector.fromArray(SPECIES, u, pos - cols).mul(c)
+						.add(DoubleVector.fromArray(SPECIES, u, pos - 1).mul(c))
+						.add(mid.mul(center))
+						.add(DoubleVector.fromArray(SPECIES, u, pos + 1).mul(c))
+						.add(DoubleVector.fromArray(SPECIES, u, pos + cols).mul(c));
+				mid.add(val.mul(scalar)).intoArray(next, pos);
+			}
+			//the rest of the row that does not fill a whole vector
+			for (; pos < end; pos++) {
+				double val = c * u[pos - cols] + c * u[pos - 1] + center * u[pos] + c * u[pos + 1] + c * u[pos + cols];
+				next[pos] = u[pos] + val * scalar;
+			}
+		}
+	}
+
+	/**
+	 * step(...) with the reduction of StencilKernel.stepReduce(...). The sum of a row is kept per lane, so
+	 * it can differ from the scalar kernel in the last bits. The temperatures, min and max are the same.
+	 */
+	@Override
+	public void stepReduce(double[] u, double[] next, int cols, double alpha, double deltaTime, int rowStart, int rowEnd, double[] partial) {
+		final double c = Math.pow(alpha, 2);
+		final double center = -4 * Math.pow(alpha, 2);
+		final double scalar = deltaTime * deltaTime;
+		final int lanes = SPECIES.length();
+		DoubleVector min = DoubleVector.broadcast(SPECIES, partial[0]);
+		DoubleVector max = DoubleVector.broadcast(SPECIES, partial[1]);
+		double lowest = partial[0];
+		double highest = partial[1];
+		double sum = partial[2];
+		for (int i = rowStart; i < rowEnd; i++) {
+			int pos = i * cols + 1;
+			int end = i * cols + cols - 1;
+			DoubleVector rowSum = DoubleVector.zero(SPECIES);
+			for (; pos + lanes <= end; pos += lanes) {
+				DoubleVector mid = DoubleVector.fromArray(SPECIES, u, pos);
+				DoubleVector val = DoubleVector.fromArray(SPECIES, u, pos - cols).mul(c)
+						.add(DoubleVector.fromArray(SPECIES, u, pos - 1).mul(c))
+						.add(mid.mul(center))
+						.add(DoubleVector.fromArray(SPECIES, u, pos + 1).mul(c))
+						.add(DoubleVector.fromArray(SPECIES, u, pos + cols).mul(c));
+				DoubleVector value = mid.add(val.mul(scalar));
+				value.intoArray(next, pos);
+				min = min.min(value);
+				max = max.max(value);
+				rowSum = rowSum.add(value);
+			}
+			double tail = 0;
+			for (; pos < end; pos++) {
+				double val = c * u[pos - cols] + c * u[pos - 1] + center * u[pos] + c * u[pos + 1] + c * u[pos + cols];
+				double value = u[pos] + val * scalar;
+				next[pos] = value;
+				if (value < lowest) lowest = value;
+				if (value > highest) highest = value;
+				tail += value;
+			}
+			sum += rowSum.reduceLanes(VectorOperators.ADD) + tail;
+		}
+		partial[0] = Math.min(lowest, min.reduceLanes(VectorOperators.MIN));
+		partial[1] = Math.max(highest, max.reduceLanes(VectorOperators.MAX));
+		partial[2] = sum;
+	}
+}